@@ -15,6 +15,7 @@ import com.microsoft.azure.management.appservice.implementation.WebAppsInner;
 import com.microsoft.azure.management.resources.ResourceGroup;
 import com.microsoft.azure.management.resources.fluentcore.model.HasInner;
 import com.microsoft.azure.util.AzureCredentials;
+import com.microsoft.jenkins.appservice.commands.GitDeployCommand;
 import com.microsoft.jenkins.appservice.util.Constants;
 import com.microsoft.jenkins.appservice.util.TokenCache;
 import hudson.Util;
@@ -43,6 +44,11 @@ public abstract class BaseDeploymentRecorder extends Recorder implements SimpleB
     @CheckForNull protected String sourceDirectory;
     @CheckForNull protected String targetDirectory;
     protected boolean deployOnlyIfSuccessful;
+    @CheckForNull protected String gitNoDeltaExtensions;
+    protected int gitPackCompression;
+    protected int gitPackThreads;
+    protected boolean gitOrphanCommit;
+    protected boolean gitInProcess;
 
     protected BaseDeploymentRecorder(
             final String azureCredentialsId,
@@ -52,6 +58,7 @@ public abstract class BaseDeploymentRecorder extends Recorder implements SimpleB
         this.resourceGroup = resourceGroup;
         this.appName = appName;
         this.deployOnlyIfSuccessful = true;
+        this.gitNoDeltaExtensions = GitDeployCommand.DEFAULT_NO_DELTA_EXTENSIONS;
     }
 
     public String getAzureCredentialsId() {
@@ -104,6 +111,52 @@ public abstract class BaseDeploymentRecorder extends Recorder implements SimpleB
         return deployOnlyIfSuccessful;
     }
 
+    @DataBoundSetter
+    public void setGitNoDeltaExtensions(@CheckForNull final String gitNoDeltaExtensions) {
+        this.gitNoDeltaExtensions = Util.fixNull(gitNoDeltaExtensions);
+    }
+
+    @CheckForNull
+    public String getGitNoDeltaExtensions() {
+        return gitNoDeltaExtensions;
+    }
+
+    @DataBoundSetter
+    public void setGitPackCompression(final int gitPackCompression) {
+        this.gitPackCompression = gitPackCompression;
+    }
+
+    public int getGitPackCompression() {
+        return gitPackCompression;
+    }
+
+    @DataBoundSetter
+    public void setGitPackThreads(final int gitPackThreads) {
+        this.gitPackThreads = gitPackThreads;
+    }
+
+    public int getGitPackThreads() {
+        return gitPackThreads;
+    }
+
+    @DataBoundSetter
+    public void setGitOrphanCommit(final boolean gitOrphanCommit) {
+        this.gitOrphanCommit = gitOrphanCommit;
+    }
+
+    public boolean isGitOrphanCommit() {
+        return gitOrphanCommit;
+    }
+
+    @DataBoundSetter
+    public void setGitInProcess(final boolean gitInProcess) {
+        this.gitInProcess = gitInProcess;
+    }
+
+    public boolean isGitInProcess() {
+        return gitInProcess;
+    }
+
     @Override
     public BuildStepMonitor getRequiredMonitorService() {
         return BuildStepMonitor.NONE;
@@ -27,6 +27,11 @@ public class FunctionAppDeploymentCommandContext extends AbstractCommandContext
     private final String filePath;
     private String sourceDirectory;
     private String targetDirectory;
+    private String gitNoDeltaExtensions;
+    private int gitPackCompression;
+    private int gitPackThreads;
+    private boolean gitOrphanCommit;
+    private boolean gitInProcess;
     private PublishingProfile pubProfile;
 
     public FunctionAppDeploymentCommandContext(final String filePath) {
@@ -43,6 +48,26 @@ public class FunctionAppDeploymentCommandContext extends AbstractCommandContext
         this.targetDirectory = Util.fixNull(targetDirectory);
     }
 
+    public void setGitNoDeltaExtensions(final String gitNoDeltaExtensions) {
+        this.gitNoDeltaExtensions = gitNoDeltaExtensions;
+    }
+
+    public void setGitPackCompression(final int gitPackCompression) {
+        this.gitPackCompression = gitPackCompression;
+    }
+
+    public void setGitPackThreads(final int gitPackThreads) {
+        this.gitPackThreads = gitPackThreads;
+    }
+
+    public void setGitOrphanCommit(final boolean gitOrphanCommit) {
+        this.gitOrphanCommit = gitOrphanCommit;
+    }
+
+    public void setGitInProcess(final boolean gitInProcess) {
+        this.gitInProcess = gitInProcess;
+    }
+
     public void configure(
             final Run<?, ?> run,
             final FilePath workspace,
@@ -79,6 +104,31 @@ public class FunctionAppDeploymentCommandContext extends AbstractCommandContext
         return targetDirectory;
     }
 
+    @Override
+    public String getGitNoDeltaExtensions() {
+        return gitNoDeltaExtensions;
+    }
+
+    @Override
+    public int getGitPackCompression() {
+        return gitPackCompression;
+    }
+
+    @Override
+    public int getGitPackThreads() {
+        return gitPackThreads;
+    }
+
+    @Override
+    public boolean isGitOrphanCommit() {
+        return gitOrphanCommit;
+    }
+
+    @Override
+    public boolean isGitInProcess() {
+        return gitInProcess;
+    }
+
     @Override
     public PublishingProfile getPublishingProfile() {
         return pubProfile;
@@ -71,6 +71,11 @@ public class FunctionAppDeploymentRecorder extends BaseDeploymentRecorder {
                 new FunctionAppDeploymentCommandContext(expandedFilePath);
         commandContext.setSourceDirectory(sourceDirectory);
         commandContext.setTargetDirectory(targetDirectory);
+        commandContext.setGitNoDeltaExtensions(gitNoDeltaExtensions);
+        commandContext.setGitPackCompression(gitPackCompression);
+        commandContext.setGitPackThreads(gitPackThreads);
+        commandContext.setGitOrphanCommit(gitOrphanCommit);
+        commandContext.setGitInProcess(gitInProcess);
 
         try {
             commandContext.configure(run, workspace, listener, app);
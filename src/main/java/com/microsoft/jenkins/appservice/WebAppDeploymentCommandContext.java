@@ -23,6 +23,7 @@ import com.microsoft.jenkins.appservice.commands.GitDeployCommand;
 import com.microsoft.jenkins.appservice.commands.IBaseCommandData;
 import com.microsoft.jenkins.appservice.commands.ICommand;
 import com.microsoft.jenkins.appservice.commands.TransitionInfo;
+import com.microsoft.jenkins.appservice.commands.ZipDeployCommand;
 import com.microsoft.jenkins.exceptions.AzureCloudException;
 import hudson.FilePath;
 import hudson.Util;
@@ -38,7 +39,8 @@ public class WebAppDeploymentCommandContext extends AbstractCommandContext
         DockerBuildCommand.IDockerBuildCommandData,
         DockerPushCommand.IDockerPushCommandData,
         DockerRemoveImageCommand.IDockerRemoveImageCommandData,
-        DockerDeployCommand.IDockerDeployCommandData {
+        DockerDeployCommand.IDockerDeployCommandData,
+        ZipDeployCommand.IZipDeployCommandData {
 
     public static final String PUBLISH_TYPE_DOCKER = "docker";
 
@@ -50,6 +52,16 @@ public class WebAppDeploymentCommandContext extends AbstractCommandContext
     private String slotName;
     private boolean deleteTempImage;
     private String azureCredentialsId;
+    private int ftpConnections;
+    private boolean ftpIncremental;
+    private boolean ftpDeleteRemovedFiles;
+    private boolean ftpsEnabled;
+    private boolean zipDeploy;
+    private String gitNoDeltaExtensions;
+    private int gitPackCompression;
+    private int gitPackThreads;
+    private boolean gitOrphanCommit;
+    private boolean gitInProcess;
 
     private PublishingProfile pubProfile;
     private WebApp webApp;
@@ -88,6 +100,46 @@ public class WebAppDeploymentCommandContext extends AbstractCommandContext
         this.azureCredentialsId = azureCredentialsId;
     }
 
+    public void setFtpConnections(final int ftpConnections) {
+        this.ftpConnections = ftpConnections;
+    }
+
+    public void setFtpIncremental(final boolean ftpIncremental) {
+        this.ftpIncremental = ftpIncremental;
+    }
+
+    public void setFtpDeleteRemovedFiles(final boolean ftpDeleteRemovedFiles) {
+        this.ftpDeleteRemovedFiles = ftpDeleteRemovedFiles;
+    }
+
+    public void setFtpsEnabled(final boolean ftpsEnabled) {
+        this.ftpsEnabled = ftpsEnabled;
+    }
+
+    public void setZipDeploy(final boolean zipDeploy) {
+        this.zipDeploy = zipDeploy;
+    }
+
+    public void setGitNoDeltaExtensions(final String gitNoDeltaExtensions) {
+        this.gitNoDeltaExtensions = gitNoDeltaExtensions;
+    }
+
+    public void setGitPackCompression(final int gitPackCompression) {
+        this.gitPackCompression = gitPackCompression;
+    }
+
+    public void setGitPackThreads(final int gitPackThreads) {
+        this.gitPackThreads = gitPackThreads;
+    }
+
+    public void setGitOrphanCommit(final boolean gitOrphanCommit) {
+        this.gitOrphanCommit = gitOrphanCommit;
+    }
+
+    public void setGitInProcess(final boolean gitInProcess) {
+        this.gitInProcess = gitInProcess;
+    }
+
     public void configure(
             final Run<?, ?> run,
             final FilePath workspace,
@@ -125,6 +177,11 @@ public class WebAppDeploymentCommandContext extends AbstractCommandContext
                 commands.put(DockerDeployCommand.class, new TransitionInfo(
                         new DockerDeployCommand(), null, null));
             }
+        } else if (app.javaVersion() != JavaVersion.OFF && zipDeploy) {
+            // Upload all files as a single zip archive instead of one by one through FTP
+            startCommandClass = ZipDeployCommand.class;
+            commands.put(ZipDeployCommand.class, new TransitionInfo(
+                    new ZipDeployCommand(), null, null));
         } else if (app.javaVersion() != JavaVersion.OFF) {
             // For Java application, use FTP-based deployment as it's the recommended way
             startCommandClass = FTPDeployCommand.class;
@@ -161,6 +218,51 @@ public class WebAppDeploymentCommandContext extends AbstractCommandContext
         return targetDirectory;
     }
 
+    @Override
+    public String getGitNoDeltaExtensions() {
+        return gitNoDeltaExtensions;
+    }
+
+    @Override
+    public int getGitPackCompression() {
+        return gitPackCompression;
+    }
+
+    @Override
+    public int getGitPackThreads() {
+        return gitPackThreads;
+    }
+
+    @Override
+    public boolean isGitOrphanCommit() {
+        return gitOrphanCommit;
+    }
+
+    @Override
+    public boolean isGitInProcess() {
+        return gitInProcess;
+    }
+
+    @Override
+    public int getFtpConnections() {
+        return ftpConnections;
+    }
+
+    @Override
+    public boolean isFtpIncremental() {
+        return ftpIncremental;
+    }
+
+    @Override
+    public boolean isFtpDeleteRemovedFiles() {
+        return ftpDeleteRemovedFiles;
+    }
+
+    @Override
+    public boolean isFtpsEnabled() {
+        return ftpsEnabled;
+    }
+
     public String getPublishType() {
         return publishType;
     }
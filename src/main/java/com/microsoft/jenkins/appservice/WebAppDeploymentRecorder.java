@@ -15,6 +15,7 @@ import com.microsoft.azure.management.appservice.implementation.SiteConfigResour
 import com.microsoft.azure.util.AzureCredentials;
 import com.microsoft.jenkins.appservice.commands.DockerBuildInfo;
 import com.microsoft.jenkins.appservice.commands.DockerPingCommand;
+import com.microsoft.jenkins.appservice.commands.FTPDeployCommand;
 import com.microsoft.jenkins.appservice.util.Constants;
 import com.microsoft.jenkins.appservice.util.TokenCache;
 import com.microsoft.jenkins.exceptions.AzureCloudException;
@@ -60,6 +61,12 @@ public class WebAppDeploymentRecorder extends BaseDeploymentRecorder {
     private String dockerFilePath;
     private DockerRegistryEndpoint dockerRegistryEndpoint;
     private boolean deleteTempImage;
+    private boolean dockerCacheFromLiveImage;
+    private int ftpConnections;
+    private boolean ftpIncremental;
+    private boolean ftpDeleteRemovedFiles;
+    private boolean ftpsEnabled;
+    private boolean zipDeploy;
 
     @CheckForNull
     private
@@ -73,6 +80,7 @@ public class WebAppDeploymentRecorder extends BaseDeploymentRecorder {
         super(azureCredentialsId, resourceGroup, appName);
         this.dockerFilePath = "**/Dockerfile";
         this.deleteTempImage = true;
+        this.ftpConnections = FTPDeployCommand.DEFAULT_FTP_CONNECTIONS;
     }
     @DataBoundSetter
     public void setPublishType(final String publishType) {
@@ -104,6 +112,36 @@ public class WebAppDeploymentRecorder extends BaseDeploymentRecorder {
         this.deleteTempImage = deleteTempImage;
     }
 
+    @DataBoundSetter
+    public void setDockerCacheFromLiveImage(final boolean dockerCacheFromLiveImage) {
+        this.dockerCacheFromLiveImage = dockerCacheFromLiveImage;
+    }
+
+    @DataBoundSetter
+    public void setFtpConnections(final int ftpConnections) {
+        this.ftpConnections = ftpConnections;
+    }
+
+    @DataBoundSetter
+    public void setFtpIncremental(final boolean ftpIncremental) {
+        this.ftpIncremental = ftpIncremental;
+    }
+
+    @DataBoundSetter
+    public void setFtpDeleteRemovedFiles(final boolean ftpDeleteRemovedFiles) {
+        this.ftpDeleteRemovedFiles = ftpDeleteRemovedFiles;
+    }
+
+    @DataBoundSetter
+    public void setFtpsEnabled(final boolean ftpsEnabled) {
+        this.ftpsEnabled = ftpsEnabled;
+    }
+
+    @DataBoundSetter
+    public void setZipDeploy(final boolean zipDeploy) {
+        this.zipDeploy = zipDeploy;
+    }
+
     public String getDockerImageName() {
         return dockerImageName;
     }
@@ -128,6 +166,30 @@ public class WebAppDeploymentRecorder extends BaseDeploymentRecorder {
         return deleteTempImage;
     }
 
+    public boolean isDockerCacheFromLiveImage() {
+        return dockerCacheFromLiveImage;
+    }
+
+    public int getFtpConnections() {
+        return ftpConnections;
+    }
+
+    public boolean isFtpIncremental() {
+        return ftpIncremental;
+    }
+
+    public boolean isFtpDeleteRemovedFiles() {
+        return ftpDeleteRemovedFiles;
+    }
+
+    public boolean isFtpsEnabled() {
+        return ftpsEnabled;
+    }
+
+    public boolean isZipDeploy() {
+        return zipDeploy;
+    }
+
     @DataBoundSetter
     public void setSlotName(@CheckForNull final String slotName) {
         this.slotName = Util.fixNull(slotName);
@@ -175,11 +237,21 @@ public class WebAppDeploymentRecorder extends BaseDeploymentRecorder {
         final WebAppDeploymentCommandContext commandContext = new WebAppDeploymentCommandContext(expandedFilePath);
         commandContext.setSourceDirectory(sourceDirectory);
         commandContext.setTargetDirectory(targetDirectory);
+        commandContext.setGitNoDeltaExtensions(gitNoDeltaExtensions);
+        commandContext.setGitPackCompression(gitPackCompression);
+        commandContext.setGitPackThreads(gitPackThreads);
+        commandContext.setGitOrphanCommit(gitOrphanCommit);
+        commandContext.setGitInProcess(gitInProcess);
         commandContext.setSlotName(slotName);
         commandContext.setPublishType(publishType);
         commandContext.setDockerBuildInfo(dockerBuildInfo);
         commandContext.setDeleteTempImage(deleteTempImage);
         commandContext.setAzureCredentialsId(azureCredentialsId);
+        commandContext.setFtpConnections(ftpConnections);
+        commandContext.setFtpIncremental(ftpIncremental);
+        commandContext.setFtpDeleteRemovedFiles(ftpDeleteRemovedFiles);
+        commandContext.setFtpsEnabled(ftpsEnabled);
+        commandContext.setZipDeploy(zipDeploy);
 
         try {
             commandContext.configure(run, workspace, listener, app);
@@ -232,6 +304,9 @@ public class WebAppDeploymentRecorder extends BaseDeploymentRecorder {
         final String imageName = StringUtils.isBlank(dockerImageName) ? "" : envVars.expand(dockerImageName);
         dockerBuildInfo.withDockerImage(imageName);
 
+        // layer cache from the original docker image
+        dockerBuildInfo.withCacheFromLiveImage(dockerCacheFromLiveImage);
+
         return dockerBuildInfo;
     }
 
@@ -0,0 +1,130 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License. See License.txt in the project root for
+ * license information.
+ */
+package com.microsoft.jenkins.appservice.commands;
+
+import com.google.common.base.Throwables;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Runs a task for every item of a collection on a bounded number of worker threads, which take the items from a
+ * shared queue. Items are taken in iteration order, but there is no ordering guarantee between items handled by
+ * different workers.
+ *
+ * The first failure stops all workers from picking up more items and is rethrown once every worker has finished its
+ * current item.
+ */
+final class BoundedParallelExecutor {
+
+    /**
+     * Work to be done for a single item.
+     *
+     * @param <T> Item type
+     * @param <E> Checked exception thrown by the task
+     */
+    interface Task<T, E extends Exception> {
+        /**
+         * @param worker Index of the worker running the task, from 0 to the number of workers - 1, e.g. to use a
+         *               resource per worker
+         * @param item   Item to process
+         */
+        void run(int worker, T item) throws E, InterruptedException;
+    }
+
+    private BoundedParallelExecutor() {
+        // Hide
+    }
+
+    /**
+     * @param items            Items to process
+     * @param threads          Maximum number of workers. With a single worker, the items are processed on the calling
+     *                         thread.
+     * @param threadNameFormat Name format of the worker threads, with the thread number as {@code %d}
+     * @param exceptionType    Checked exception thrown by the task
+     * @param task             Task to run for each item
+     * @param <T>              Item type
+     * @param <E>              Checked exception thrown by the task
+     * @throws E                    The first failure of the task
+     * @throws InterruptedException
+     */
+    static <T, E extends Exception> void forEach(
+            final Collection<T> items,
+            final int threads,
+            final String threadNameFormat,
+            final Class<E> exceptionType,
+            final Task<T, E> task) throws E, InterruptedException {
+        if (items.isEmpty()) {
+            return;
+        }
+
+        final int workers = Math.min(Math.max(1, threads), items.size());
+        if (workers == 1) {
+            for (final T item : items) {
+                task.run(0, item);
+            }
+            return;
+        }
+
+        final Queue<T> queue = new ConcurrentLinkedQueue<>(items);
+        final AtomicBoolean failed = new AtomicBoolean(false);
+        final ExecutorService executor = Executors.newFixedThreadPool(workers,
+                new ThreadFactoryBuilder().setNameFormat(threadNameFormat).setDaemon(true).build());
+        final List<Future<Void>> futures = new ArrayList<>(workers);
+        try {
+            for (int i = 0; i < workers; i++) {
+                final int worker = i;
+                futures.add(executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        try {
+                            while (!failed.get()) {
+                                final T item = queue.poll();
+                                if (item == null) {
+                                    break;
+                                }
+                                task.run(worker, item);
+                            }
+                        } catch (Exception e) {
+                            failed.set(true);
+                            throw e;
+                        }
+                        return null;
+                    }
+                }));
+            }
+
+            Throwable failure = null;
+            for (final Future<Void> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    if (failure == null) {
+                        failure = e.getCause();
+                    }
+                }
+            }
+            if (failure != null) {
+                Throwables.propagateIfInstanceOf(failure, InterruptedException.class);
+                Throwables.propagateIfPossible(failure, exceptionType);
+                // The task only throws E, InterruptedException or unchecked exceptions
+                throw new IllegalStateException(failure);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -14,13 +14,28 @@ import org.apache.commons.lang.SystemUtils;
 
 import java.io.Serializable;
 
+/**
+ * Builds the Docker clients of the commands. Clients are cached per Docker host and registry credentials in the JVM
+ * running the command, so the connections they pool are reused across commands and builds on the same agent.
+ */
 public class DefaultDockerClientBuilder implements DockerClientBuilder, Serializable {
 
-    private static final int CONNECT_TIMEOUT = 1000;
-    private static final int MAX_TOTAL_CONNECTIONS = 1;
-    private static final int MAX_PER_ROUTE_CONNECTIONS = 1;
+    private static final int DEFAULT_CONNECT_TIMEOUT = 1000;
+    private static final int DEFAULT_MAX_CONNECTIONS = 10;
     private static final String DEFAULT_DOCKER_HOST_ON_WINDOWS = "tcp://localhost:2375";
 
+    /**
+     * Connect timeout to the Docker daemon in milliseconds, configurable on the agent.
+     */
+    static final int CONNECT_TIMEOUT = Integer.getInteger(DefaultDockerClientBuilder.class.getName()
+            + ".connectTimeout", DEFAULT_CONNECT_TIMEOUT);
+
+    /**
+     * Size of the connection pool of each client, configurable on the agent. Builds running concurrently on the
+     * agent share the pool when they use the same Docker host and registry credentials.
+     */
+    static final int MAX_CONNECTIONS = Integer.getInteger(DefaultDockerClientBuilder.class.getName()
+            + ".maxConnections", DEFAULT_MAX_CONNECTIONS);
 
     @Override
     public DockerClient build(final AuthConfig authConfig) {
@@ -37,13 +52,24 @@ public class DefaultDockerClientBuilder implements DockerClientBuilder, Serializ
             builder.withDockerHost(DEFAULT_DOCKER_HOST_ON_WINDOWS);
         }
 
-        final DockerCmdExecFactory dockerCmdExecFactory = new JerseyDockerCmdExecFactory()
-                .withConnectTimeout(CONNECT_TIMEOUT)
-                .withMaxTotalConnections(MAX_TOTAL_CONNECTIONS)
-                .withMaxPerRouteConnections(MAX_PER_ROUTE_CONNECTIONS);
+        final AzureDockerClientConfig config = builder.build();
+        return DockerClientCache.INSTANCE.acquire(config, new DockerClientCache.Factory() {
+            @Override
+            public DockerClient create() {
+                final DockerCmdExecFactory dockerCmdExecFactory = new JerseyDockerCmdExecFactory()
+                        .withConnectTimeout(CONNECT_TIMEOUT)
+                        .withMaxTotalConnections(MAX_CONNECTIONS)
+                        .withMaxPerRouteConnections(MAX_CONNECTIONS);
 
-        return com.github.dockerjava.core.DockerClientBuilder.getInstance(builder.build())
-                .withDockerCmdExecFactory(dockerCmdExecFactory).build();
+                return com.github.dockerjava.core.DockerClientBuilder.getInstance(config)
+                        .withDockerCmdExecFactory(dockerCmdExecFactory).build();
+            }
+        });
+    }
+
+    @Override
+    public void release(final DockerClient dockerClient) {
+        DockerClientCache.INSTANCE.release(dockerClient);
     }
 
 }
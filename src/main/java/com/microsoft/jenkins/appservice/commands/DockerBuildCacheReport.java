@@ -0,0 +1,86 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License. See License.txt in the project root for
+ * license information.
+ */
+package com.microsoft.jenkins.appservice.commands;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Collects whether each step of a docker build reused a cached layer, from the output stream of the build.
+ *
+ * A step hit the cache if its first {@code --->} line is {@code Using cache}, and missed it otherwise, whether that
+ * line is the {@code Running in} container of a {@code RUN} step or directly the id of the new layer, as for
+ * {@code COPY} and {@code ADD}.
+ */
+final class DockerBuildCacheReport {
+
+    private static final String STEP_PREFIX = "Step ";
+    private static final String RESULT_PREFIX = "---> ";
+    private static final String CACHE_HIT = "Using cache";
+    // The base image of a stage, not a layer built by the step
+    private static final Pattern FROM_STEP = Pattern.compile("^Step \\S+ : FROM\\s", Pattern.CASE_INSENSITIVE);
+
+    private final List<String> steps = new ArrayList<>();
+    private final List<Boolean> hits = new ArrayList<>();
+    // If the result of the last step is still to come
+    private boolean pending;
+
+    /**
+     * @param stream Output stream item of the build, which may contain several lines
+     */
+    void onStream(final String stream) {
+        if (stream == null) {
+            return;
+        }
+        for (final String rawLine : stream.split("\n")) {
+            final String line = rawLine.trim();
+            if (line.startsWith(STEP_PREFIX)) {
+                steps.add(line);
+                hits.add(null);
+                pending = !FROM_STEP.matcher(line).find();
+            } else if (pending && line.startsWith(RESULT_PREFIX)) {
+                final String result = line.substring(RESULT_PREFIX.length());
+                // Either a container runs the step or the id of the new layer comes right away
+                hits.set(hits.size() - 1, result.startsWith(CACHE_HIT));
+                pending = false;
+            }
+        }
+    }
+
+    int getHits() {
+        return count(true);
+    }
+
+    int getMisses() {
+        return count(false);
+    }
+
+    private int count(final boolean hit) {
+        int count = 0;
+        for (final Boolean value : hits) {
+            if (value != null && value == hit) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Print the summary and the cache result of each step building a layer. Steps that don't build a layer, like
+     * {@code FROM}, are left out.
+     */
+    void print(final PrintStream logger) {
+        logger.println(String.format("Docker layer cache: %d hit(s), %d miss(es)", getHits(), getMisses()));
+        for (int i = 0; i < steps.size(); i++) {
+            final Boolean hit = hits.get(i);
+            if (hit != null) {
+                logger.println(String.format("  [%s] %s", hit ? "hit" : "miss", steps.get(i)));
+            }
+        }
+    }
+}
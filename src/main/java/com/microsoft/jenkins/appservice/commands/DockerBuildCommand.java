@@ -7,9 +7,12 @@
 package com.microsoft.jenkins.appservice.commands;
 
 import com.github.dockerjava.api.DockerClient;
+import com.github.dockerjava.api.command.BuildImageCmd;
 import com.github.dockerjava.api.model.BuildResponseItem;
 import com.github.dockerjava.api.model.ResponseItem;
+import com.github.dockerjava.core.NameParser;
 import com.github.dockerjava.core.command.BuildImageResultCallback;
+import com.github.dockerjava.core.command.PullImageResultCallback;
 import com.google.common.collect.Sets;
 import com.microsoft.jenkins.exceptions.AzureCloudException;
 import hudson.FilePath;
@@ -19,9 +22,13 @@ import org.apache.commons.lang.StringUtils;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.Collections;
+import java.util.Locale;
 
 public class DockerBuildCommand extends DockerCommand implements ICommand<DockerBuildCommand.IDockerBuildCommandData> {
 
+    private static final String DEFAULT_TAG = "latest";
+
     @Override
     public void execute(final IDockerBuildCommandData context) {
         final DockerBuildInfo dockerBuildInfo = context.getDockerBuildInfo();
@@ -92,11 +99,22 @@ public class DockerBuildCommand extends DockerCommand implements ICommand<Docker
 
         @Override
         public String call() throws AzureCloudException {
-            final boolean[] hasError = {false};
             final DockerClient client = dockerClientBuilder.build(dockerBuildInfo.getAuthConfig());
+            try {
+                return build(client);
+            } finally {
+                dockerClientBuilder.release(client);
+            }
+        }
+
+        private String build(final DockerClient client) throws AzureCloudException {
+            final boolean[] hasError = {false};
+            final String cacheImage = pullLiveImage(client);
+            final DockerBuildCacheReport cacheReport = new DockerBuildCacheReport();
             final BuildImageResultCallback callback = new BuildImageResultCallback() {
                 @Override
                 public void onNext(final BuildResponseItem buildResponseItem) {
+                    cacheReport.onStream(buildResponseItem.getStream());
                     if (buildResponseItem.isBuildSuccessIndicated()) {
                         listener.getLogger().println(buildResponseItem.getStream());
                         dockerBuildInfo.setImageId(buildResponseItem.getImageId());
@@ -121,21 +139,92 @@ public class DockerBuildCommand extends DockerCommand implements ICommand<Docker
                 }
             };
 
-            try {
-                client.buildImageCmd(new File(dockerfile.getRemote()))
-                        .withTags(Sets.newHashSet(image))
-                        .exec(callback)
-                        .awaitCompletion();
-            } catch (InterruptedException e) {
-                throw new AzureCloudException(e);
+            final File dockerfileFile = new File(dockerfile.getRemote());
+            if (!DockerBuildContext.DEFAULT_DOCKERFILE.equals(dockerfileFile.getName())) {
+                // The streamed context relies on the default Dockerfile name
+                try {
+                    configure(client.buildImageCmd(dockerfileFile), cacheImage)
+                            .exec(callback)
+                            .awaitCompletion();
+                } catch (InterruptedException e) {
+                    throw new AzureCloudException(e);
+                }
+            } else {
+                buildWithStreamedContext(client, dockerfileFile.getParentFile(), cacheImage, callback, hasError);
             }
 
             if (hasError[0]) {
                 throw new AzureCloudException("Fail to build docker image");
             }
 
+            cacheReport.print(listener.getLogger());
             return dockerBuildInfo.getImageId();
         }
+
+        private BuildImageCmd configure(final BuildImageCmd cmd, final String cacheImage) {
+            cmd.withTags(Sets.newHashSet(image));
+            if (cacheImage != null) {
+                cmd.withCacheFrom(Collections.singleton(cacheImage));
+            }
+            return cmd;
+        }
+
+        /**
+         * Pull the image the app currently runs, so the layers it shares with the new image don't need to be built
+         * again on an agent which doesn't have them yet.
+         *
+         * @return The pulled image, or null if the layer cache isn't enabled or the image couldn't be pulled
+         */
+        private String pullLiveImage(final DockerClient client) throws AzureCloudException {
+            final String linuxFxVersion = dockerBuildInfo.getLinuxFxVersion();
+            if (!dockerBuildInfo.isCacheFromLiveImage() || linuxFxVersion == null
+                    || !linuxFxVersion.startsWith(LINUX_FX_VERSION_DOCKER_PREFIX)) {
+                return null;
+            }
+
+            final NameParser.ReposTag reposTag = NameParser.parseRepositoryTag(
+                    linuxFxVersion.substring(LINUX_FX_VERSION_DOCKER_PREFIX.length()));
+            // Repository names are lowercase, while tags are case-sensitive
+            final String repository = reposTag.repos.toLowerCase(Locale.ROOT);
+            final String tag = StringUtils.isBlank(reposTag.tag) ? DEFAULT_TAG : reposTag.tag;
+            final String liveImage = repository + ":" + tag;
+            listener.getLogger().println(String.format("Pulling `%s` to use as layer cache", liveImage));
+            try {
+                client.pullImageCmd(repository)
+                        .withTag(tag)
+                        .withAuthConfig(dockerBuildInfo.getAuthConfig())
+                        .exec(new PullImageResultCallback())
+                        .awaitSuccess();
+                return liveImage;
+            } catch (RuntimeException e) {
+                listener.getLogger().println("Fail to pull the image, building without layer cache: " + e.getMessage());
+                return null;
+            }
+        }
+
+        private void buildWithStreamedContext(
+                final DockerClient client,
+                final File contextDir,
+                final String cacheImage,
+                final BuildImageResultCallback callback,
+                final boolean[] hasError) throws AzureCloudException {
+            try (DockerBuildContext context = new DockerBuildContext(contextDir)) {
+                configure(client.buildImageCmd(context.open()), cacheImage)
+                        .exec(callback)
+                        .awaitCompletion();
+
+                // Stops the context writer if the build ended without reading the whole context
+                context.close();
+                if (hasError[0]) {
+                    return;
+                }
+                context.await();
+                listener.getLogger().println(String.format("Sent docker build context: %d file(s), %d bytes in %d ms",
+                        context.getFileCount(), context.getSize(), context.getMillis()));
+            } catch (IOException | InterruptedException e) {
+                throw new AzureCloudException(e);
+            }
+        }
     }
 
     public interface IDockerBuildCommandData extends IBaseCommandData {
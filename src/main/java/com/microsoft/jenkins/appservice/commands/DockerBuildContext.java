@@ -0,0 +1,382 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License. See License.txt in the project root for
+ * license information.
+ */
+package com.microsoft.jenkins.appservice.commands;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+import org.apache.commons.compress.archivers.tar.TarConstants;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.FilenameUtils;
+import org.apache.commons.io.output.CountingOutputStream;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.regex.Pattern;
+
+/**
+ * Docker build context of a Dockerfile, i.e. the directory containing it without the files excluded by its
+ * {@code .dockerignore}.
+ *
+ * The context is streamed as a tar archive while the Docker API request reads it, so it is neither held in memory
+ * nor written to a temporary file. Like the Docker CLI, it includes the directories left empty, e.g. for a
+ * {@code COPY} of a directory to create.
+ */
+final class DockerBuildContext implements Closeable {
+
+    static final String DEFAULT_DOCKERFILE = "Dockerfile";
+    static final String DOCKERIGNORE = ".dockerignore";
+
+    private static final int PIPE_BUFFER_SIZE = 64 * 1024;
+    private static final int EXECUTABLE_FILE_MODE = 0100755;
+    private static final String EXCEPTION_PREFIX = "!";
+    private static final String COMMENT_PREFIX = "#";
+    private static final String SEPARATOR = "/";
+    // Escaped in the regular expression of a pattern outside of character classes, the other special characters
+    // have the same meaning in both
+    private static final String REGEX_LITERALS = ".$^+|(){}";
+
+    /**
+     * A {@code .dockerignore} pattern, with the syntax of Go filepath.Match extended with {@code **}, which matches
+     * any number of directories.
+     */
+    private static final class IgnorePattern {
+        private final Pattern regex;
+        private final boolean exception;
+
+        private IgnorePattern(final String glob, final boolean exception) {
+            this.regex = Pattern.compile(toRegex(glob));
+            this.exception = exception;
+        }
+
+        /**
+         * Translated the same way as by the fileutils package of Docker.
+         */
+        private static String toRegex(final String glob) {
+            final StringBuilder regex = new StringBuilder("^");
+            boolean inClass = false;
+            for (int i = 0; i < glob.length(); i++) {
+                final char ch = glob.charAt(i);
+                if (inClass) {
+                    if (ch == '\\' && i + 1 < glob.length()) {
+                        i++;
+                        appendClassLiteral(regex, glob.charAt(i));
+                    } else if (ch == ']') {
+                        inClass = false;
+                        regex.append(ch);
+                    } else if (ch == '[' || ch == '&') {
+                        // Union and intersection of classes in Java, plain characters in Go
+                        appendClassLiteral(regex, ch);
+                    } else {
+                        regex.append(ch);
+                    }
+                } else if (ch == '*') {
+                    if (i + 1 < glob.length() && glob.charAt(i + 1) == '*') {
+                        i++;
+                        // "**/" is the same as "**"
+                        if (i + 1 < glob.length() && glob.charAt(i + 1) == '/') {
+                            i++;
+                        }
+                        regex.append(i + 1 == glob.length() ? ".*" : "(.*/)?");
+                    } else {
+                        regex.append("[^/]*");
+                    }
+                } else if (ch == '?') {
+                    regex.append("[^/]");
+                } else if (ch == '[') {
+                    inClass = true;
+                    regex.append('[');
+                    // Negated by "!" as well as "^"
+                    if (i + 1 < glob.length() && (glob.charAt(i + 1) == '!' || glob.charAt(i + 1) == '^')) {
+                        regex.append('^');
+                        i++;
+                    }
+                } else if (ch == '\\' && i + 1 < glob.length()) {
+                    i++;
+                    regex.append(Pattern.quote(String.valueOf(glob.charAt(i))));
+                } else if (REGEX_LITERALS.indexOf(ch) >= 0) {
+                    regex.append('\\').append(ch);
+                } else {
+                    regex.append(ch);
+                }
+            }
+            return regex.append('$').toString();
+        }
+
+        private static void appendClassLiteral(final StringBuilder regex, final char ch) {
+            if (!Character.isLetterOrDigit(ch)) {
+                regex.append('\\');
+            }
+            regex.append(ch);
+        }
+
+        /**
+         * @return If the pattern matches the path or one of its parent directories
+         */
+        private boolean matches(final String path) {
+            String current = path;
+            while (!current.isEmpty()) {
+                if (regex.matcher(current).matches()) {
+                    return true;
+                }
+                final int separator = current.lastIndexOf('/');
+                current = separator < 0 ? "" : current.substring(0, separator);
+            }
+            return false;
+        }
+    }
+
+    private final File directory;
+    private final List<IgnorePattern> excludes;
+
+    private PipedInputStream input;
+    private FutureTask<Void> writer;
+    private volatile int fileCount;
+    private volatile long size;
+    private volatile long millis;
+
+    /**
+     * @param directory Context directory, containing the Dockerfile
+     * @throws IOException If the {@code .dockerignore} file can't be read
+     */
+    DockerBuildContext(final File directory) throws IOException {
+        this.directory = directory;
+        this.excludes = readDockerIgnore(new File(directory, DOCKERIGNORE));
+    }
+
+    private static List<IgnorePattern> readDockerIgnore(final File file) throws IOException {
+        if (!file.isFile()) {
+            return Collections.emptyList();
+        }
+
+        final List<IgnorePattern> patterns = new ArrayList<>();
+        for (final String line : FileUtils.readLines(file, StandardCharsets.UTF_8)) {
+            String pattern = line.trim();
+            if (pattern.isEmpty() || pattern.startsWith(COMMENT_PREFIX)) {
+                continue;
+            }
+
+            final boolean exception = pattern.startsWith(EXCEPTION_PREFIX);
+            if (exception) {
+                pattern = pattern.substring(1).trim();
+            }
+            pattern = FilenameUtils.normalizeNoEndSeparator(pattern, true);
+            if (pattern == null || pattern.isEmpty()) {
+                continue;
+            }
+            if (pattern.startsWith("/")) {
+                pattern = pattern.substring(1);
+            }
+            patterns.add(new IgnorePattern(pattern, exception));
+        }
+        return patterns;
+    }
+
+    /**
+     * Check if a file is excluded from the context. Like the Docker CLI, the last matching pattern wins, and a
+     * pattern matching a directory matches everything under it. The {@code .dockerignore} file itself and the
+     * Dockerfile are always sent, as the daemon needs them.
+     *
+     * @param path Path relative to the context directory, with forward slashes
+     * @return If the file is excluded
+     */
+    boolean isExcluded(final String path) {
+        if (path.equals(DOCKERIGNORE) || path.equals(DEFAULT_DOCKERFILE)) {
+            return false;
+        }
+
+        boolean excluded = false;
+        for (final IgnorePattern pattern : excludes) {
+            if (pattern.matches(path)) {
+                excluded = !pattern.exception;
+            }
+        }
+        return excluded;
+    }
+
+    private boolean hasExceptions() {
+        for (final IgnorePattern pattern : excludes) {
+            if (pattern.exception) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return Paths of the files and of the empty directories sent to the daemon, relative to the context directory
+     * and sorted. Directories end with a slash.
+     * @throws IOException
+     */
+    List<String> listFiles() throws IOException {
+        final Path root = directory.toPath();
+        final List<String> files = new ArrayList<>();
+        // Number of paths listed before each directory being visited, to find out if it's left empty
+        final Deque<Integer> listed = new ArrayDeque<>();
+        Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(final Path dir, final BasicFileAttributes attrs) {
+                final String path = FilenameUtils.separatorsToUnix(root.relativize(dir).toString());
+                // Nothing under an excluded directory can be sent, unless an exception pattern includes it again
+                if (!path.isEmpty() && !hasExceptions() && isExcluded(path)) {
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+                listed.push(files.size());
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(final Path dir, final IOException e) throws IOException {
+                if (e != null) {
+                    throw e;
+                }
+                final String path = FilenameUtils.separatorsToUnix(root.relativize(dir).toString());
+                if (listed.pop() == files.size() && !path.isEmpty() && !isExcluded(path)) {
+                    files.add(path + SEPARATOR);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(final Path file, final BasicFileAttributes attrs) {
+                final String path = FilenameUtils.separatorsToUnix(root.relativize(file).toString());
+                if (!attrs.isDirectory() && !isExcluded(path)) {
+                    files.add(path);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        Collections.sort(files);
+        return files;
+    }
+
+    /**
+     * Start writing the context as a tar archive in a background thread.
+     *
+     * @return Tar archive of the context, to be read by the Docker API request
+     * @throws IOException
+     */
+    InputStream open() throws IOException {
+        final List<String> files = listFiles();
+        input = new PipedInputStream(PIPE_BUFFER_SIZE);
+        final PipedOutputStream output = new PipedOutputStream(input);
+        final long start = System.currentTimeMillis();
+
+        writer = new FutureTask<>(new Callable<Void>() {
+            @Override
+            public Void call() throws IOException {
+                final CountingOutputStream counter = new CountingOutputStream(output);
+                try (TarArchiveOutputStream tar = new TarArchiveOutputStream(counter)) {
+                    tar.setLongFileMode(TarArchiveOutputStream.LONGFILE_POSIX);
+                    tar.setBigNumberMode(TarArchiveOutputStream.BIGNUMBER_POSIX);
+                    for (final String path : files) {
+                        writeEntry(tar, path);
+                        fileCount++;
+                    }
+                    tar.finish();
+                    size = counter.getByteCount();
+                }
+                // Only done once the request has read everything but the last pipe buffer
+                millis = System.currentTimeMillis() - start;
+                return null;
+            }
+        });
+        final Thread thread = new Thread(writer, "azure-docker-build-context");
+        thread.setDaemon(true);
+        thread.start();
+        return input;
+    }
+
+    private void writeEntry(final TarArchiveOutputStream tar, final String path) throws IOException {
+        final File file = new File(directory, path);
+        final Path filePath = file.toPath();
+        if (path.endsWith(SEPARATOR)) {
+            // Keeps the permissions of the directory
+            tar.putArchiveEntry(new TarArchiveEntry(file, path));
+            tar.closeArchiveEntry();
+            return;
+        }
+        if (Files.isSymbolicLink(filePath)) {
+            final TarArchiveEntry entry = new TarArchiveEntry(path, TarConstants.LF_SYMLINK);
+            entry.setLinkName(FilenameUtils.separatorsToUnix(Files.readSymbolicLink(filePath).toString()));
+            tar.putArchiveEntry(entry);
+            tar.closeArchiveEntry();
+            return;
+        }
+
+        final TarArchiveEntry entry = new TarArchiveEntry(file, path);
+        if (file.canExecute()) {
+            entry.setMode(EXECUTABLE_FILE_MODE);
+        }
+        tar.putArchiveEntry(entry);
+        Files.copy(filePath, tar);
+        tar.closeArchiveEntry();
+    }
+
+    /**
+     * Wait until the whole context is written. Must be called after the stream returned by {@link #open()} is
+     * consumed or closed.
+     *
+     * @throws IOException If the context couldn't be written completely
+     * @throws InterruptedException
+     */
+    void await() throws IOException, InterruptedException {
+        try {
+            writer.get();
+        } catch (ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException("Fail to send docker build context", cause);
+        }
+    }
+
+    int getFileCount() {
+        return fileCount;
+    }
+
+    /**
+     * @return Size of the tar archive sent to the daemon, in bytes
+     */
+    long getSize() {
+        return size;
+    }
+
+    /**
+     * @return Time taken to send the context, in milliseconds
+     */
+    long getMillis() {
+        return millis;
+    }
+
+    /**
+     * Close the read end of the archive, which stops the writer if the request didn't read everything.
+     */
+    @Override
+    public void close() throws IOException {
+        if (input != null) {
+            input.close();
+        }
+    }
+}
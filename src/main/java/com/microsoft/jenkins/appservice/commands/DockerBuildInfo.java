@@ -17,6 +17,8 @@ public class DockerBuildInfo implements Serializable {
     private String dockerImage;
     private String dockerImageTag;
     private String imageId; // the image Id after build successfully
+    private boolean cacheFromLiveImage; // use the original docker image as layer cache
+    private String imageDigest; // the digest of the image in the registry, once pushed or found there
 
     public String getLinuxFxVersion() {
         return linuxFxVersion;
@@ -63,6 +65,15 @@ public class DockerBuildInfo implements Serializable {
         return this;
     }
 
+    public boolean isCacheFromLiveImage() {
+        return cacheFromLiveImage;
+    }
+
+    public DockerBuildInfo withCacheFromLiveImage(final boolean aCacheFromLiveImage) {
+        this.cacheFromLiveImage = aCacheFromLiveImage;
+        return this;
+    }
+
     public String getImageId() {
         return imageId;
     }
@@ -70,4 +81,12 @@ public class DockerBuildInfo implements Serializable {
     public void setImageId(final String aImageId) {
         this.imageId = aImageId;
     }
+
+    public String getImageDigest() {
+        return imageDigest;
+    }
+
+    public void setImageDigest(final String aImageDigest) {
+        this.imageDigest = aImageDigest;
+    }
 }
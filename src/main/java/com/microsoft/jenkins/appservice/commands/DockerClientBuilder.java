@@ -13,4 +13,10 @@ public interface DockerClientBuilder {
 
     DockerClient build(AuthConfig authConfig);
 
+    /**
+     * Give back a client returned by {@link #build(AuthConfig)} once the command is done with it, so it can be
+     * reused by other commands. The client must not be closed by the command.
+     */
+    void release(DockerClient dockerClient);
+
 }
@@ -0,0 +1,184 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License. See License.txt in the project root for
+ * license information.
+ */
+package com.microsoft.jenkins.appservice.commands;
+
+import com.github.dockerjava.api.DockerClient;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Docker clients shared by the commands running in the same JVM, so their pooled connections to the daemon are
+ * reused across commands and builds.
+ *
+ * A client is leased by {@link #acquire(Object, Factory)} and given back by {@link #release(DockerClient)}. Clients
+ * not leased are closed once idle for longer than the idle timeout, or once there are more clients than the limit,
+ * least recently used first. Idle clients are checked on every lease and release, and by a background timer while
+ * any client is cached, so they are closed even when no other command uses Docker afterwards.
+ */
+final class DockerClientCache {
+
+    private static final Logger LOGGER = Logger.getLogger(DockerClientCache.class.getName());
+
+    private static final int DEFAULT_IDLE_MINUTES = 10;
+    private static final int DEFAULT_MAX_CLIENTS = 8;
+    private static final int INITIAL_CAPACITY = 16;
+    private static final float LOAD_FACTOR = 0.75f;
+    private static final long MIN_EVICTION_INTERVAL_MILLIS = 100;
+
+    // Shared by all the caches, it only runs while one of them has clients
+    private static final ScheduledExecutorService EVICTOR = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder().setNameFormat("azure-docker-client-evictor").setDaemon(true).build());
+
+    /**
+     * Minutes a client is kept without being leased, configurable on the agent.
+     */
+    static final int IDLE_MINUTES = Integer.getInteger(DockerClientCache.class.getName() + ".idleMinutes",
+            DEFAULT_IDLE_MINUTES);
+
+    /**
+     * Maximum number of clients kept, i.e. of distinct Docker host and registry credentials in use on the agent.
+     */
+    static final int MAX_CLIENTS = Integer.getInteger(DockerClientCache.class.getName() + ".maxClients",
+            DEFAULT_MAX_CLIENTS);
+
+    static final DockerClientCache INSTANCE = new DockerClientCache(
+            TimeUnit.MINUTES.toMillis(IDLE_MINUTES), MAX_CLIENTS);
+
+    /**
+     * Creates the client of a key not cached yet.
+     */
+    interface Factory {
+        DockerClient create();
+    }
+
+    private static final class Entry {
+        private final DockerClient client;
+        private int leases;
+        private long lastUsed;
+
+        private Entry(final DockerClient client) {
+            this.client = client;
+        }
+    }
+
+    private final long idleTimeoutMillis;
+    private final int maxClients;
+    // In access order, so the least recently used clients are evicted first
+    private final Map<Object, Entry> entries = new LinkedHashMap<>(INITIAL_CAPACITY, LOAD_FACTOR, true);
+    private ScheduledFuture<?> evictTask;
+
+    DockerClientCache(final long idleTimeoutMillis, final int maxClients) {
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.maxClients = Math.max(1, maxClients);
+    }
+
+    /**
+     * @param key     Identifies the Docker host and the credentials of the client, e.g. the client configuration
+     * @param factory Creates the client if none is cached for the key
+     * @return The cached client, which must be released when the command is done with it
+     */
+    DockerClient acquire(final Object key, final Factory factory) {
+        final List<DockerClient> evicted;
+        final DockerClient client;
+        synchronized (this) {
+            Entry entry = entries.get(key);
+            if (entry == null) {
+                entry = new Entry(factory.create());
+                entries.put(key, entry);
+            }
+            entry.leases++;
+            entry.lastUsed = System.currentTimeMillis();
+            client = entry.client;
+            evicted = evict();
+            scheduleEviction();
+        }
+        close(evicted);
+        return client;
+    }
+
+    /**
+     * Give back a client leased by {@link #acquire(Object, Factory)}. Clients not created by the cache are ignored.
+     */
+    void release(final DockerClient client) {
+        final List<DockerClient> evicted;
+        synchronized (this) {
+            for (final Entry entry : entries.values()) {
+                if (entry.client == client && entry.leases > 0) {
+                    entry.leases--;
+                    entry.lastUsed = System.currentTimeMillis();
+                    break;
+                }
+            }
+            evicted = evict();
+        }
+        close(evicted);
+    }
+
+    synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Check the idle clients periodically until the cache is empty.
+     */
+    private void scheduleEviction() {
+        if (evictTask != null) {
+            return;
+        }
+        final long interval = Math.max(idleTimeoutMillis, MIN_EVICTION_INTERVAL_MILLIS);
+        evictTask = EVICTOR.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                final List<DockerClient> evicted;
+                synchronized (DockerClientCache.this) {
+                    evicted = evict();
+                    if (entries.isEmpty()) {
+                        evictTask.cancel(false);
+                        evictTask = null;
+                    }
+                }
+                close(evicted);
+            }
+        }, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    private List<DockerClient> evict() {
+        final long now = System.currentTimeMillis();
+        final List<DockerClient> evicted = new ArrayList<>();
+        final Iterator<Entry> iterator = entries.values().iterator();
+        while (iterator.hasNext()) {
+            final Entry entry = iterator.next();
+            if (entry.leases == 0
+                    && (entries.size() > maxClients || now - entry.lastUsed >= idleTimeoutMillis)) {
+                iterator.remove();
+                evicted.add(entry.client);
+            }
+        }
+        return evicted;
+    }
+
+    private static void close(final List<DockerClient> clients) {
+        for (final DockerClient client : clients) {
+            try {
+                client.close();
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Fail to close docker client", e);
+            }
+        }
+    }
+}
@@ -18,13 +18,15 @@ import java.net.URISyntaxException;
  */
 public abstract class DockerCommand {
 
+    protected static final String LINUX_FX_VERSION_DOCKER_PREFIX = "DOCKER|";
+
     protected String getFullImageName(final DockerBuildInfo dockerBuildInfo) throws AzureCloudException {
         if (StringUtils.isNotBlank(dockerBuildInfo.getDockerImage())) {
             return dockerBuildInfo.getDockerImage();
         }
 
         final String linuxFxVersion = dockerBuildInfo.getLinuxFxVersion();
-        if (!linuxFxVersion.startsWith("DOCKER|")) {
+        if (!linuxFxVersion.startsWith(LINUX_FX_VERSION_DOCKER_PREFIX)) {
             throw new AzureCloudException("unrecognized docker container");
         }
         // the linuxFxVersion should be "DOCKER|<registry>/repo:tag"
@@ -8,6 +8,7 @@ package com.microsoft.jenkins.appservice.commands;
 
 import com.github.dockerjava.api.model.AuthConfig;
 import com.microsoft.azure.management.Azure;
+import com.microsoft.azure.management.appservice.AppSetting;
 import com.microsoft.azure.management.appservice.DeploymentSlot;
 import com.microsoft.azure.management.appservice.NameValuePair;
 import com.microsoft.azure.management.appservice.WebApp;
@@ -19,6 +20,7 @@ import org.apache.commons.lang.StringUtils;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 
@@ -28,6 +30,9 @@ public class DockerDeployCommand extends DockerCommand
     private static final String SETTING_REGISTRY_SERVER = "DOCKER_REGISTRY_SERVER_URL";
     private static final String SETTING_REGISTRY_USERNAME = "DOCKER_REGISTRY_SERVER_USERNAME";
     private static final String SETTING_REGISTRY_PASSWORD = "DOCKER_REGISTRY_SERVER_PASSWORD";
+    // Digest of the image configured by the last successful deployment, documented in help-publishViaDocker.html.
+    // It's only written along with a new image, whose update restarts the app anyway.
+    private static final String SETTING_DOCKER_IMAGE_DIGEST = "JENKINS_DOCKER_IMAGE_DIGEST";
 
     @Override
     public void execute(final IDockerDeployCommandData context) {
@@ -47,7 +52,16 @@ public class DockerDeployCommand extends DockerCommand
             }
 
             if (StringUtils.isBlank(context.getSlotName())) {
+                if (isRunning(dockerBuildInfo, dockerBuildInfo.getLinuxFxVersion(), webApp.appSettings(), image)) {
+                    logAlreadyRunning(context, image);
+                    return;
+                }
                 final WebApp.Update update = webApp.update();
+                if (dockerBuildInfo.getImageDigest() != null) {
+                    update.withAppSetting(SETTING_DOCKER_IMAGE_DIGEST, dockerBuildInfo.getImageDigest());
+                } else {
+                    update.withoutAppSetting(SETTING_DOCKER_IMAGE_DIGEST);
+                }
                 if (AuthConfig.DEFAULT_SERVER_ADDRESS.equalsIgnoreCase(authConfig.getRegistryAddress())) {
                     update.withPrivateDockerHubImage(image)
                             .withCredentials(authConfig.getUsername(), authConfig.getPassword());
@@ -71,6 +85,10 @@ public class DockerDeployCommand extends DockerCommand
                 final SiteConfigResourceInner siteConfigResourceInner = azure.webApps().inner().getConfigurationSlot(
                         slot.resourceGroupName(), webApp.name(), slotName);
                 checkNotNull(siteConfigResourceInner, "Configuration not found for slot:" + slotName);
+                if (isRunning(dockerBuildInfo, siteConfigResourceInner.linuxFxVersion(), slot.appSettings(), image)) {
+                    logAlreadyRunning(context, image);
+                    return;
+                }
 
                 List<NameValuePair> appSettings = new ArrayList<>();
                 appSettings.add(new NameValuePair()
@@ -85,6 +103,11 @@ public class DockerDeployCommand extends DockerCommand
                 appSettings.add(new NameValuePair()
                         .withName(SETTING_REGISTRY_PASSWORD)
                         .withValue(authConfig.getPassword()));
+                if (dockerBuildInfo.getImageDigest() != null) {
+                    appSettings.add(new NameValuePair()
+                            .withName(SETTING_DOCKER_IMAGE_DIGEST)
+                            .withValue(dockerBuildInfo.getImageDigest()));
+                }
                 siteConfigResourceInner.withLinuxFxVersion(String.format("DOCKER|%s", image));
                 siteConfigResourceInner.withAppSettings(appSettings);
                 azure.webApps().inner().updateConfigurationSlot(
@@ -98,6 +121,30 @@ public class DockerDeployCommand extends DockerCommand
         }
     }
 
+    /**
+     * Check if the app already runs the image: it's configured with the same image, and the digest recorded by its
+     * last successful deployment is the digest of the image in the registry. The tag alone isn't enough, as a
+     * mutable tag like {@code latest} may have been pushed by a build which then failed to update the app.
+     */
+    private static boolean isRunning(
+            final DockerBuildInfo dockerBuildInfo,
+            final String linuxFxVersion,
+            final Map<String, AppSetting> appSettings,
+            final String image) {
+        final String digest = dockerBuildInfo.getImageDigest();
+        if (digest == null || !(LINUX_FX_VERSION_DOCKER_PREFIX + image).equalsIgnoreCase(linuxFxVersion)) {
+            return false;
+        }
+        final AppSetting deployedDigest = appSettings == null ? null : appSettings.get(SETTING_DOCKER_IMAGE_DIGEST);
+        return deployedDigest != null && digest.equals(deployedDigest.value());
+    }
+
+    private static void logAlreadyRunning(final IDockerDeployCommandData context, final String image) {
+        context.logStatus(String.format("Azure app service already runs docker image %s with digest %s, "
+                + "skipped updating and restarting it.", image, context.getDockerBuildInfo().getImageDigest()));
+        context.setDeploymentState(DeploymentState.Success);
+    }
+
     public interface IDockerDeployCommandData extends IBaseCommandData {
         DockerBuildInfo getDockerBuildInfo();
 
@@ -13,8 +13,16 @@ import hudson.util.FormValidation;
 
 public class DockerPingCommand {
     public FormValidation ping(final AuthConfig authConfig) {
-        DockerClient dockerClient = new DefaultDockerClientBuilder().build(authConfig);
+        final DockerClientBuilder dockerClientBuilder = new DefaultDockerClientBuilder();
+        final DockerClient dockerClient = dockerClientBuilder.build(authConfig);
+        try {
+            return ping(dockerClient, authConfig);
+        } finally {
+            dockerClientBuilder.release(dockerClient);
+        }
+    }
 
+    private FormValidation ping(final DockerClient dockerClient, final AuthConfig authConfig) {
         try {
             // make sure local docker is running
             dockerClient.pingCmd().exec();
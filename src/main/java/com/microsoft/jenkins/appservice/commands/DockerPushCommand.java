@@ -7,6 +7,7 @@
 package com.microsoft.jenkins.appservice.commands;
 
 import com.github.dockerjava.api.DockerClient;
+import com.github.dockerjava.api.command.InspectImageResponse;
 import com.github.dockerjava.api.model.PushResponseItem;
 import com.github.dockerjava.core.command.PushImageResultCallback;
 import com.microsoft.jenkins.exceptions.AzureCloudException;
@@ -16,9 +17,17 @@ import jenkins.security.MasterToSlaveCallable;
 import org.apache.commons.lang.StringUtils;
 
 import java.io.IOException;
+import java.io.Serializable;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.List;
 
 public class DockerPushCommand extends DockerCommand implements ICommand<DockerPushCommand.IDockerPushCommandData> {
 
+    private static final String DOCKER_HUB_HOST = "index.docker.io";
+    private static final String URL_WITH_SCHEME = "^\\w+://.*";
+    private static final double BYTES_PER_MB = 1024 * 1024;
+
     @Override
     public void execute(final IDockerPushCommandData context) {
         final DockerBuildInfo dockerBuildInfo = context.getDockerBuildInfo();
@@ -30,19 +39,163 @@ public class DockerPushCommand extends DockerCommand implements ICommand<DockerP
 
             final FilePath workspace = context.getWorkspace();
 
-            final DeploymentState state = workspace.act(new DockerPushCommandOnSlave(
+            final String imageName = getFullImageName(dockerBuildInfo);
+            final String registryAddress = dockerBuildInfo.getAuthConfig().getRegistryAddress();
+            final String digest = workspace.act(new DockerImageDigestCheckOnSlave(
+                    context.getListener(), context.getDockerClientBuilder(), dockerBuildInfo, imageName,
+                    getRegistryUrl(registryAddress), getRepository(imageName, registryAddress)));
+            if (digest != null) {
+                dockerBuildInfo.setImageDigest(digest);
+                context.logStatus("Push skipped");
+                context.setDeploymentState(DeploymentState.Success);
+                return;
+            }
+
+            final PushResult result = workspace.act(new DockerPushCommandOnSlave(
                     context.getListener(), context.getDockerClientBuilder(), dockerBuildInfo, image));
+            dockerBuildInfo.setImageDigest(result.digest);
 
             context.logStatus("Push completed");
-            context.setDeploymentState(state);
+            context.setDeploymentState(result.state);
         } catch (AzureCloudException | InterruptedException | IOException e) {
             context.getListener().getLogger().println("Build failed for " + e.getMessage());
             context.setDeploymentState(DeploymentState.HasError);
         }
     }
 
+    private String getRegistryUrl(final String registryAddress) throws AzureCloudException {
+        if (getRegistryHostname(registryAddress).contains(DOCKER_HUB_HOST)) {
+            return DockerRegistryClient.DOCKER_HUB_URL;
+        }
+        try {
+            final URI uri = new URI(registryAddress.matches(URL_WITH_SCHEME) ? registryAddress
+                    : "https://" + registryAddress);
+            return uri.getScheme() + "://" + uri.getAuthority();
+        } catch (URISyntaxException e) {
+            throw new AzureCloudException("The docker registry is not a valid URI", e);
+        }
+    }
+
+    /**
+     * @return Repository of the image in the registry, i.e. its name without the registry host
+     */
+    private String getRepository(final String imageName, final String registryAddress) throws AzureCloudException {
+        final String registryHost = getRegistryHostname(registryAddress);
+        if (!registryHost.contains(DOCKER_HUB_HOST)) {
+            return StringUtils.removeStart(imageName, registryHost + "/");
+        }
+        final String repository = StringUtils.removeStart(StringUtils.removeStart(imageName, "index."), "docker.io/");
+        return repository.contains("/") ? repository : "library/" + repository;
+    }
+
+    /**
+     * Check if the registry already has the image under its tag, by comparing the manifest digest of the tag in
+     * the registry with the digest the daemon recorded when the image was last pushed or pulled. An image rebuilt
+     * from an unchanged source with the layer cache keeps its id and so this digest.
+     *
+     * Returns the digest if the push can be skipped, or null otherwise, including when the check fails.
+     */
+    private static final class DockerImageDigestCheckOnSlave
+            extends MasterToSlaveCallable<String, AzureCloudException> {
+
+        private final TaskListener listener;
+        private final DockerClientBuilder dockerClientBuilder;
+        private final DockerBuildInfo dockerBuildInfo;
+        private final String imageName;
+        private final String registryUrl;
+        private final String repository;
+
+        private DockerImageDigestCheckOnSlave(
+                final TaskListener listener,
+                final DockerClientBuilder dockerClientBuilder,
+                final DockerBuildInfo dockerBuildInfo,
+                final String imageName,
+                final String registryUrl,
+                final String repository) {
+            this.listener = listener;
+            this.dockerClientBuilder = dockerClientBuilder;
+            this.dockerBuildInfo = dockerBuildInfo;
+            this.imageName = imageName;
+            this.registryUrl = registryUrl;
+            this.repository = repository;
+        }
+
+        @Override
+        public String call() throws AzureCloudException {
+            final long start = System.currentTimeMillis();
+            final String tag = dockerBuildInfo.getDockerImageTag();
+            final InspectImageResponse image;
+            final DockerClient dockerClient = dockerClientBuilder.build(dockerBuildInfo.getAuthConfig());
+            try {
+                image = dockerClient.inspectImageCmd(imageName + ":" + tag).exec();
+            } catch (RuntimeException e) {
+                listener.getLogger().println("Fail to inspect docker image: " + e.getMessage());
+                return null;
+            } finally {
+                dockerClientBuilder.release(dockerClient);
+            }
+
+            final String localDigest = getRepoDigest(image);
+            if (localDigest == null) {
+                // The manifest, and so its digest, only exists once the image is pushed
+                return null;
+            }
+
+            final String registryDigest;
+            try {
+                registryDigest = new DockerRegistryClient(registryUrl, dockerBuildInfo.getAuthConfig())
+                        .getManifestDigest(repository, tag);
+            } catch (IOException e) {
+                listener.getLogger().println("Fail to get the image digest from the registry: " + e.getMessage());
+                return null;
+            }
+            if (!localDigest.equals(registryDigest)) {
+                return null;
+            }
+
+            final long size = image.getSize() == null ? 0 : image.getSize();
+            listener.getLogger().println(String.format(
+                    "The registry already has `%s:%s` with digest %s, skipped pushing %.1f MB (checked in %d ms)",
+                    imageName, tag, localDigest, size / BYTES_PER_MB, System.currentTimeMillis() - start));
+            return localDigest;
+        }
+
+        private String getRepoDigest(final InspectImageResponse image) {
+            final List<String> repoDigests = image.getRepoDigests();
+            if (repoDigests == null) {
+                return null;
+            }
+            final String prefix = imageName + "@";
+            for (final String repoDigest : repoDigests) {
+                if (repoDigest.startsWith(prefix)) {
+                    return repoDigest.substring(prefix.length());
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * State of a push and digest of the pushed image, as reported by the daemon.
+     */
+    private static final class PushResult implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private final DeploymentState state;
+        private final String digest;
+
+        private PushResult(final DeploymentState state, final String digest) {
+            this.state = state;
+            this.digest = digest;
+        }
+    }
+
+    /**
+     * Push the image and summarize its progress per layer. The number of layers uploaded in parallel is set by the
+     * daemon with its {@code max-concurrent-uploads} option, which the remote API doesn't expose per push.
+     */
     private static final class DockerPushCommandOnSlave
-            extends MasterToSlaveCallable<DeploymentState, AzureCloudException> {
+            extends MasterToSlaveCallable<PushResult, AzureCloudException> {
 
         private final DockerClientBuilder dockerClientBuilder;
         private final TaskListener listener;
@@ -61,13 +214,14 @@ public class DockerPushCommand extends DockerCommand implements ICommand<DockerP
         }
 
         @Override
-        public DeploymentState call() throws AzureCloudException {
+        public PushResult call() throws AzureCloudException {
             final DeploymentState[] state = {DeploymentState.Success};
+            final DockerPushProgress progress = new DockerPushProgress(listener.getLogger());
             final DockerClient dockerClient = dockerClientBuilder.build(dockerBuildInfo.getAuthConfig());
             final PushImageResultCallback callback = new PushImageResultCallback() {
                 @Override
                 public void onNext(final PushResponseItem item) {
-                    listener.getLogger().println(outputResponseItem(item));
+                    progress.onNext(item);
                     super.onNext(item);
                 }
 
@@ -79,26 +233,17 @@ public class DockerPushCommand extends DockerCommand implements ICommand<DockerP
                 }
             };
 
-            dockerClient.pushImageCmd(image)
-                    .withTag(dockerBuildInfo.getDockerImageTag())
-                    .exec(callback)
-                    .awaitSuccess();
-
-            return state[0];
-        }
-
-        private String outputResponseItem(final PushResponseItem item) {
-            final StringBuilder stringBuilder = new StringBuilder();
-            if (StringUtils.isNotBlank(item.getId())) {
-                stringBuilder.append(item.getId()).append(": ");
+            try {
+                dockerClient.pushImageCmd(image)
+                        .withTag(dockerBuildInfo.getDockerImageTag())
+                        .exec(callback)
+                        .awaitSuccess();
+            } finally {
+                dockerClientBuilder.release(dockerClient);
             }
-            if (StringUtils.isNotBlank(item.getStatus())) {
-                stringBuilder.append(item.getStatus());
-            }
-            if (StringUtils.isNotBlank(item.getProgress())) {
-                stringBuilder.append(item.getProgress());
-            }
-            return stringBuilder.toString();
+
+            progress.print();
+            return new PushResult(state[0], progress.getDigest());
         }
     }
 
@@ -0,0 +1,183 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License. See License.txt in the project root for
+ * license information.
+ */
+package com.microsoft.jenkins.appservice.commands;
+
+import com.github.dockerjava.api.model.PushResponseItem;
+import com.github.dockerjava.api.model.ResponseItem;
+import org.apache.commons.lang.StringUtils;
+
+import java.io.PrintStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Aggregates the progress of a docker push per layer, and prints it as a summary line at most once per interval
+ * instead of a line per progress item of each layer.
+ *
+ * Items not related to a layer, like the digest of the pushed image, and retries are printed as they come.
+ */
+final class DockerPushProgress {
+
+    private static final int DEFAULT_INTERVAL_SECONDS = 10;
+    private static final double BYTES_PER_MB = 1024 * 1024;
+    private static final double MILLIS_PER_SECOND = 1000;
+
+    /**
+     * Seconds between two progress lines, configurable on the agent.
+     */
+    static final int INTERVAL_SECONDS = Integer.getInteger(DockerPushProgress.class.getName() + ".intervalSeconds",
+            DEFAULT_INTERVAL_SECONDS);
+
+    private static final String PUSHING = "Pushing";
+    private static final String PUSHED = "Pushed";
+    private static final String LAYER_EXISTS = "Layer already exists";
+    private static final String MOUNTED_FROM = "Mounted from";
+    private static final String RETRYING = "Retrying";
+    // Last item of a push, e.g. "latest: digest: sha256:<hex> size: 1234"
+    private static final Pattern DIGEST = Pattern.compile("digest: (\\S+)");
+
+    private static final class Layer {
+        private long current;
+        private long total;
+        private boolean done;
+        private boolean existing;
+    }
+
+    private final PrintStream logger;
+    private final long intervalMillis;
+    private final Map<String, Layer> layers = new LinkedHashMap<>();
+    private long start = -1;
+    private long end = -1;
+    private long lastPrint;
+    private String digest;
+
+    DockerPushProgress(final PrintStream logger) {
+        this(logger, TimeUnit.SECONDS.toMillis(INTERVAL_SECONDS));
+    }
+
+    DockerPushProgress(final PrintStream logger, final long intervalMillis) {
+        this.logger = logger;
+        this.intervalMillis = intervalMillis;
+    }
+
+    void onNext(final PushResponseItem item) {
+        onNext(item, System.currentTimeMillis());
+    }
+
+    synchronized void onNext(final PushResponseItem item, final long now) {
+        final String id = item.getId();
+        final String status = StringUtils.defaultString(item.getStatus());
+        if (item.isErrorIndicated()) {
+            logger.println(item.getError());
+            return;
+        }
+        if (StringUtils.isBlank(id) || status.startsWith(RETRYING)) {
+            final Matcher matcher = DIGEST.matcher(status);
+            if (matcher.find()) {
+                digest = matcher.group(1);
+            }
+            if (StringUtils.isNotBlank(status)) {
+                logger.println(StringUtils.isBlank(id) ? status : id + ": " + status);
+            }
+            return;
+        }
+
+        Layer layer = layers.get(id);
+        if (layer == null) {
+            layer = new Layer();
+            layers.put(id, layer);
+        }
+        if (status.equals(PUSHING)) {
+            if (start < 0) {
+                start = now;
+                lastPrint = now;
+            }
+            final ResponseItem.ProgressDetail detail = item.getProgressDetail();
+            if (detail != null) {
+                if (detail.getCurrent() != null) {
+                    layer.current = detail.getCurrent();
+                }
+                if (detail.getTotal() != null) {
+                    layer.total = detail.getTotal();
+                }
+            }
+        } else if (status.equals(PUSHED)) {
+            layer.done = true;
+            layer.current = Math.max(layer.current, layer.total);
+            end = now;
+        } else if (status.equals(LAYER_EXISTS) || status.startsWith(MOUNTED_FROM)) {
+            layer.done = true;
+            layer.existing = true;
+        }
+
+        if (start >= 0 && now - lastPrint >= intervalMillis) {
+            lastPrint = now;
+            logger.println(String.format("Pushing: %d/%d layer(s) done, %.1f MB, %.1f MB/s", getLayersDone(),
+                    layers.size(), getBytesPushed() / BYTES_PER_MB, getBytesPerSecond(now) / BYTES_PER_MB));
+        }
+    }
+
+    /**
+     * @return Digest of the pushed image manifest, or null if the daemon didn't report it
+     */
+    synchronized String getDigest() {
+        return digest;
+    }
+
+    synchronized int getLayersDone() {
+        int done = 0;
+        for (final Layer layer : layers.values()) {
+            if (layer.done) {
+                done++;
+            }
+        }
+        return done;
+    }
+
+    synchronized int getLayersExisting() {
+        int existing = 0;
+        for (final Layer layer : layers.values()) {
+            if (layer.existing) {
+                existing++;
+            }
+        }
+        return existing;
+    }
+
+    /**
+     * @return Bytes of the layers uploaded so far, as reported by the daemon
+     */
+    synchronized long getBytesPushed() {
+        long bytes = 0;
+        for (final Layer layer : layers.values()) {
+            bytes += layer.current;
+        }
+        return bytes;
+    }
+
+    /**
+     * @return Upload throughput from the first layer upload until the given time
+     */
+    synchronized double getBytesPerSecond(final long now) {
+        if (start < 0 || now <= start) {
+            return 0;
+        }
+        return getBytesPushed() * MILLIS_PER_SECOND / (now - start);
+    }
+
+    /**
+     * Print the summary of the whole push.
+     */
+    synchronized void print() {
+        final long upload = start < 0 || end < start ? 0 : end - start;
+        logger.println(String.format("Pushed %d layer(s), %d already in the registry: %.1f MB in %d ms (%.1f MB/s)",
+                getLayersDone() - getLayersExisting(), getLayersExisting(), getBytesPushed() / BYTES_PER_MB, upload,
+                getBytesPerSecond(end) / BYTES_PER_MB));
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License. See License.txt in the project root for
+ * license information.
+ */
+package com.microsoft.jenkins.appservice.commands;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.dockerjava.api.model.AuthConfig;
+import org.apache.commons.codec.binary.Base64;
+import org.apache.commons.lang.StringUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Minimal client of the Docker Registry HTTP API V2, to read the manifest digest of a tag without pulling the image.
+ *
+ * Supports the basic and the bearer token authentication used by Docker Hub and Azure Container Registry.
+ */
+final class DockerRegistryClient {
+
+    static final String DOCKER_HUB_URL = "https://registry-1.docker.io";
+
+    private static final int TIMEOUT_MILLIS = 10000;
+    private static final String MANIFEST_TYPES = "application/vnd.docker.distribution.manifest.v2+json, "
+            + "application/vnd.docker.distribution.manifest.list.v2+json, "
+            + "application/vnd.oci.image.manifest.v1+json, "
+            + "application/vnd.oci.image.index.v1+json";
+    private static final String DIGEST_HEADER = "Docker-Content-Digest";
+    private static final String CHALLENGE_HEADER = "WWW-Authenticate";
+    private static final String BASIC = "Basic";
+    private static final String BEARER = "Bearer";
+    private static final Pattern CHALLENGE_PARAM = Pattern.compile("(\\w+)=\"([^\"]*)\"");
+
+    private final String baseUrl;
+    private final AuthConfig authConfig;
+
+    /**
+     * @param baseUrl    URL of the registry, e.g. {@code https://example.azurecr.io}
+     * @param authConfig Registry credentials
+     */
+    DockerRegistryClient(final String baseUrl, final AuthConfig authConfig) {
+        this.baseUrl = StringUtils.removeEnd(baseUrl, "/");
+        this.authConfig = authConfig;
+    }
+
+    /**
+     * @param repository Repository in the registry, without the registry host, e.g. {@code user/app}
+     * @param tag        Tag of the image
+     * @return Digest of the manifest of the tag, or null if the registry doesn't have the tag
+     * @throws IOException If the registry couldn't be queried
+     */
+    String getManifestDigest(final String repository, final String tag) throws IOException {
+        final URL url = new URL(String.format("%s/v2/%s/manifests/%s", baseUrl, repository, tag));
+        HttpURLConnection connection = head(url, null);
+        if (connection.getResponseCode() == HttpURLConnection.HTTP_UNAUTHORIZED) {
+            final String challenge = connection.getHeaderField(CHALLENGE_HEADER);
+            connection.disconnect();
+            connection = head(url, authorize(challenge, repository));
+        }
+
+        try {
+            final int code = connection.getResponseCode();
+            if (code == HttpURLConnection.HTTP_NOT_FOUND) {
+                return null;
+            }
+            if (code != HttpURLConnection.HTTP_OK) {
+                throw new IOException(String.format("Unexpected response from %s: %d %s",
+                        url, code, connection.getResponseMessage()));
+            }
+            return connection.getHeaderField(DIGEST_HEADER);
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    private HttpURLConnection head(final URL url, final String authorization) throws IOException {
+        final HttpURLConnection connection = open(url, authorization);
+        connection.setRequestMethod("HEAD");
+        connection.setRequestProperty("Accept", MANIFEST_TYPES);
+        return connection;
+    }
+
+    private static HttpURLConnection open(final URL url, final String authorization) throws IOException {
+        final HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        connection.setConnectTimeout(TIMEOUT_MILLIS);
+        connection.setReadTimeout(TIMEOUT_MILLIS);
+        connection.setInstanceFollowRedirects(true);
+        if (authorization != null) {
+            connection.setRequestProperty("Authorization", authorization);
+        }
+        return connection;
+    }
+
+    private String authorize(final String challenge, final String repository) throws IOException {
+        if (StringUtils.startsWithIgnoreCase(challenge, BASIC)) {
+            return basicAuthorization();
+        }
+        if (!StringUtils.startsWithIgnoreCase(challenge, BEARER)) {
+            throw new IOException("Unsupported authentication challenge from the registry: " + challenge);
+        }
+
+        final Map<String, String> params = new HashMap<>();
+        final Matcher matcher = CHALLENGE_PARAM.matcher(challenge);
+        while (matcher.find()) {
+            params.put(matcher.group(1), matcher.group(2));
+        }
+        final String realm = params.get("realm");
+        if (StringUtils.isBlank(realm)) {
+            throw new IOException("No token realm in the authentication challenge: " + challenge);
+        }
+
+        final StringBuilder tokenUrl = new StringBuilder(realm)
+                .append(realm.contains("?") ? '&' : '?')
+                .append("scope=").append(encode("repository:" + repository + ":pull"));
+        if (params.containsKey("service")) {
+            tokenUrl.append("&service=").append(encode(params.get("service")));
+        }
+
+        final HttpURLConnection connection = open(new URL(tokenUrl.toString()), basicAuthorization());
+        try {
+            final int code = connection.getResponseCode();
+            if (code != HttpURLConnection.HTTP_OK) {
+                throw new IOException(String.format("Fail to get a registry token from %s: %d %s",
+                        realm, code, connection.getResponseMessage()));
+            }
+            final JsonNode json;
+            try (InputStream in = connection.getInputStream()) {
+                json = new ObjectMapper().readTree(in);
+            }
+            final JsonNode token = json.has("token") ? json.get("token") : json.get("access_token");
+            if (token == null || StringUtils.isEmpty(token.asText())) {
+                throw new IOException("No token in the response of " + realm);
+            }
+            return BEARER + " " + token.asText();
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    private String basicAuthorization() {
+        if (authConfig == null || StringUtils.isEmpty(authConfig.getUsername())) {
+            return null;
+        }
+        final String credentials = authConfig.getUsername() + ":" + StringUtils.defaultString(authConfig.getPassword());
+        return BASIC + " " + Base64.encodeBase64String(credentials.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String encode(final String value) throws IOException {
+        return URLEncoder.encode(value, StandardCharsets.UTF_8.name());
+    }
+}
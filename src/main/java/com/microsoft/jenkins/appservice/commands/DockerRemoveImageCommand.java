@@ -53,9 +53,13 @@ public class DockerRemoveImageCommand extends DockerCommand
         @Override
         public Void call() throws AzureCloudException {
             final DockerClient dockerClient = dockerClientBuilder.build(dockerBuildInfo.getAuthConfig());
-            dockerClient.removeImageCmd(imageId)
-                    .withForce(true)
-                    .exec();
+            try {
+                dockerClient.removeImageCmd(imageId)
+                        .withForce(true)
+                        .exec();
+            } finally {
+                dockerClientBuilder.release(dockerClient);
+            }
             return null;
         }
     }
@@ -0,0 +1,202 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License. See License.txt in the project root for
+ * license information.
+ */
+package com.microsoft.jenkins.appservice.commands;
+
+import org.apache.commons.net.ProtocolCommandEvent;
+import org.apache.commons.net.ProtocolCommandListener;
+import org.apache.commons.net.ftp.FTP;
+import org.apache.commons.net.ftp.FTPClient;
+import org.apache.commons.net.ftp.FTPSClient;
+
+import javax.net.ssl.SSLContext;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.security.GeneralSecurityException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Opens logged-in FTP connections to the publishing endpoint of an app.
+ */
+class FTPClientFactory {
+
+    /**
+     * Size of the buffer used to copy file content to the data connection, configurable on the agent running the
+     * deployment. The default of commons-net is only a few KB, which needs many more system calls per file.
+     */
+    static final int BUFFER_SIZE = Integer.getInteger(
+            FTPClientFactory.class.getName() + ".bufferSize", 256 * 1024);
+
+    /**
+     * Send buffer size of the data connection sockets, configurable on the agent running the deployment.
+     */
+    static final int SOCKET_BUFFER_SIZE = Integer.getInteger(
+            FTPClientFactory.class.getName() + ".socketBufferSize", 1024 * 1024);
+
+    private final String host;
+    private final String userName;
+    private final String password;
+    private final boolean ftps;
+    private final CommandCounter commandCounter = new CommandCounter();
+    private final HandshakeCounter handshakeCounter;
+    private SSLContext sslContext;
+
+    FTPClientFactory(final String host, final String userName, final String password) {
+        this(host, userName, password, false, null);
+    }
+
+    /**
+     * @param host FTP host
+     * @param userName User name
+     * @param password Password
+     * @param ftps Whether to use explicit FTPS. All the connections share one TLS context, so they can resume each
+     *             other's TLS session.
+     * @param logger Build log to report once if the data connections can't resume the TLS session, can be null
+     */
+    FTPClientFactory(final String host, final String userName, final String password, final boolean ftps,
+                     final PrintStream logger) {
+        this.host = host;
+        this.userName = userName;
+        this.password = password;
+        this.ftps = ftps;
+        this.handshakeCounter = new HandshakeCounter(logger);
+    }
+
+    /**
+     * Connect and login to the FTP server. The returned connection is in passive and binary mode.
+     *
+     * @return Connected FTP client
+     * @throws IOException
+     * @throws FTPDeployCommand.FTPException
+     */
+    FTPClient connect() throws IOException, FTPDeployCommand.FTPException {
+        final FTPClient ftpClient = ftps ? new FTPSSessionReuseClient(getSslContext(), handshakeCounter)
+                : new FTPClient();
+        ftpClient.addProtocolCommandListener(commandCounter);
+        ftpClient.setBufferSize(BUFFER_SIZE);
+        ftpClient.setSendDataSocketBufferSize(SOCKET_BUFFER_SIZE);
+        ftpClient.connect(host);
+        try {
+            if (!ftpClient.login(userName, password)) {
+                throw new FTPDeployCommand.FTPException("Fail to login");
+            }
+
+            if (ftpClient instanceof FTPSClient) {
+                // Protect the data connections as well
+                ((FTPSClient) ftpClient).execPBSZ(0);
+                ((FTPSClient) ftpClient).execPROT("P");
+            }
+
+            // Use passive mode to bypass client firewall
+            ftpClient.enterLocalPassiveMode();
+
+            if (!ftpClient.setFileType(FTP.BINARY_FILE_TYPE)) {
+                throw new FTPDeployCommand.FTPException("Fail to set FTP file type to binary");
+            }
+        } catch (IOException | FTPDeployCommand.FTPException e) {
+            disconnect(ftpClient, null);
+            throw e;
+        }
+        return ftpClient;
+    }
+
+    /**
+     * @return Number of FTP commands sent by all the connections opened by this factory
+     */
+    int getCommandCount() {
+        return commandCounter.count.get();
+    }
+
+    /**
+     * @return Number of TLS handshakes on data connections that resumed the session of the control connection
+     */
+    int getResumedHandshakes() {
+        return handshakeCounter.resumed.get();
+    }
+
+    /**
+     * @return Number of full TLS handshakes on data connections
+     */
+    int getFullHandshakes() {
+        return handshakeCounter.full.get();
+    }
+
+    boolean isFtps() {
+        return ftps;
+    }
+
+    private synchronized SSLContext getSslContext() throws FTPDeployCommand.FTPException {
+        if (sslContext == null) {
+            try {
+                sslContext = SSLContext.getInstance("TLS");
+                sslContext.init(null, null, null);
+            } catch (GeneralSecurityException e) {
+                throw new FTPDeployCommand.FTPException(e);
+            }
+        }
+        return sslContext;
+    }
+
+    /**
+     * Disconnect from the FTP server if still connected.
+     *
+     * @param ftpClient FTP client
+     * @param logger Logger to report failures to, can be null
+     */
+    static void disconnect(final FTPClient ftpClient, final PrintStream logger) {
+        if (ftpClient.isConnected()) {
+            try {
+                ftpClient.disconnect();
+            } catch (IOException e) {
+                if (logger != null) {
+                    logger.println("Fail to disconnect from FTP: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    private static final class CommandCounter implements ProtocolCommandListener {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public void protocolCommandSent(final ProtocolCommandEvent event) {
+            count.incrementAndGet();
+        }
+
+        @Override
+        public void protocolReplyReceived(final ProtocolCommandEvent event) {
+            // Only commands are counted
+        }
+    }
+
+    private static final class HandshakeCounter implements FTPSSessionReuseClient.HandshakeListener {
+        private final AtomicInteger resumed = new AtomicInteger();
+        private final AtomicInteger full = new AtomicInteger();
+        private final AtomicBoolean reported = new AtomicBoolean();
+        private final PrintStream logger;
+
+        private HandshakeCounter(final PrintStream logger) {
+            this.logger = logger;
+        }
+
+        @Override
+        public void handshakeCompleted(final boolean isResumed) {
+            if (isResumed) {
+                resumed.incrementAndGet();
+            } else {
+                full.incrementAndGet();
+            }
+        }
+
+        @Override
+        public void sessionReuseUnavailable(final String reason) {
+            if (logger != null && reported.compareAndSet(false, true)) {
+                logger.println("FTPS data connections can't reuse the TLS session of the control connection, each "
+                        + "of them uses a full handshake and servers requiring session reuse refuse them: " + reason);
+            }
+        }
+    }
+}
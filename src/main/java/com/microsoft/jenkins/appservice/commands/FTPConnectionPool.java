@@ -0,0 +1,123 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License. See License.txt in the project root for
+ * license information.
+ */
+package com.microsoft.jenkins.appservice.commands;
+
+import org.apache.commons.net.ftp.FTPClient;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A fixed number of logged-in FTP connections that work through a shared queue of items.
+ *
+ * The first connection is the primary one and is used for the serial work (directory preparation, cleanup). The
+ * others are opened lazily the first time they are needed and kept open until {@link #close()}.
+ */
+class FTPConnectionPool {
+
+    /**
+     * Work to be done for a single item on one of the pooled connections.
+     *
+     * @param <T> Item type
+     */
+    interface Task<T> {
+        void run(FTPClient ftpClient, T item) throws IOException, FTPDeployCommand.FTPException, InterruptedException;
+    }
+
+    private final FTPClientFactory factory;
+    private final PrintStream logger;
+    private final AtomicReferenceArray<FTPClient> clients;
+
+    FTPConnectionPool(final FTPClientFactory factory, final int size, final PrintStream logger) {
+        this.factory = factory;
+        this.logger = logger;
+        this.clients = new AtomicReferenceArray<>(Math.max(1, size));
+    }
+
+    int size() {
+        return clients.length();
+    }
+
+    FTPClient getPrimary() throws IOException, FTPDeployCommand.FTPException {
+        return getClient(0);
+    }
+
+    /**
+     * Replace a broken pooled connection with a new one. Items processed later on the same slot of the pool use the
+     * new connection.
+     *
+     * @param broken The pooled connection to replace
+     * @return The new connection
+     * @throws IOException
+     * @throws FTPDeployCommand.FTPException
+     */
+    FTPClient reconnect(final FTPClient broken) throws IOException, FTPDeployCommand.FTPException {
+        int index = -1;
+        for (int i = 0; i < clients.length(); i++) {
+            if (clients.get(i) == broken) {
+                index = i;
+                break;
+            }
+        }
+        if (index < 0) {
+            throw new IllegalArgumentException("Connection doesn't belong to the pool");
+        }
+
+        FTPClientFactory.disconnect(broken, logger);
+        clients.set(index, null);
+        return getClient(index);
+    }
+
+    private FTPClient getClient(final int index) throws IOException, FTPDeployCommand.FTPException {
+        FTPClient ftpClient = clients.get(index);
+        if (ftpClient == null) {
+            ftpClient = factory.connect();
+            clients.set(index, ftpClient);
+        }
+        return ftpClient;
+    }
+
+    /**
+     * Run the task for every item, spreading the items over the pooled connections through a
+     * {@link BoundedParallelExecutor} with a worker per connection.
+     *
+     * @param items Items to process
+     * @param task Task to run for each item
+     * @param <T> Item type
+     * @throws FTPDeployCommand.FTPException
+     * @throws InterruptedException
+     */
+    <T> void forEach(final Collection<T> items, final Task<T> task)
+            throws FTPDeployCommand.FTPException, InterruptedException {
+        BoundedParallelExecutor.forEach(items, size(), "azure-ftp-deploy-%d", FTPDeployCommand.FTPException.class,
+                new BoundedParallelExecutor.Task<T, FTPDeployCommand.FTPException>() {
+                    @Override
+                    public void run(final int worker, final T item)
+                            throws FTPDeployCommand.FTPException, InterruptedException {
+                        try {
+                            // The connection may have been replaced by the previous item
+                            task.run(getClient(worker), item);
+                        } catch (IOException e) {
+                            throw new FTPDeployCommand.FTPException(e);
+                        }
+                    }
+                });
+    }
+
+    /**
+     * Disconnect all opened connections.
+     */
+    void close() {
+        for (int i = 0; i < clients.length(); i++) {
+            final FTPClient ftpClient = clients.getAndSet(i, null);
+            if (ftpClient != null) {
+                FTPClientFactory.disconnect(ftpClient, logger);
+            }
+        }
+    }
+}
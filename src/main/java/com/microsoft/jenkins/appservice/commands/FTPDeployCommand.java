@@ -12,12 +12,18 @@ import hudson.Util;
 import hudson.model.TaskListener;
 import jenkins.security.MasterToSlaveCallable;
 import org.apache.commons.io.FilenameUtils;
-import org.apache.commons.net.ftp.FTP;
 import org.apache.commons.net.ftp.FTPClient;
 import org.apache.commons.net.ftp.FTPFile;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 
 public class FTPDeployCommand implements ICommand<FTPDeployCommand.IFTPDeployCommandData> {
 
@@ -26,8 +32,16 @@ public class FTPDeployCommand implements ICommand<FTPDeployCommand.IFTPDeployCom
     // Java specific
     private static final String TOMCAT_ROOT_WAR = SITE_ROOT + "webapps/ROOT.war";
     private static final String TOMCAT_ROOT_DIR = SITE_ROOT + "webapps/ROOT";
+    // Tomcat only deploys WAR files and directories, so it ignores the war while it's being uploaded
+    private static final String TOMCAT_ROOT_WAR_UPLOAD = TOMCAT_ROOT_WAR + ".uploading";
+    // Outside of webapps, so Tomcat doesn't deploy the old ROOT directory as another app
+    private static final String TOMCAT_OLD_ROOT_DIR_NAME_PREFIX = ".ROOT.old-";
+    private static final String TOMCAT_OLD_ROOT_DIR_PREFIX = SITE_ROOT + TOMCAT_OLD_ROOT_DIR_NAME_PREFIX;
 
-    private static final class FTPException extends Exception {
+    public static final int DEFAULT_FTP_CONNECTIONS = 4;
+    public static final int MAX_FTP_CONNECTIONS = 16;
+
+    static final class FTPException extends Exception {
 
         FTPException(final String msg) {
             super(msg);
@@ -60,7 +74,7 @@ public class FTPDeployCommand implements ICommand<FTPDeployCommand.IFTPDeployCom
         }
 
         try {
-            workspace.act(new FTPDeployCommandOnSlave(
+            final FTPDeployMetrics metrics = workspace.act(new FTPDeployCommandOnSlave(
                 context.getListener(),
                 ftpUrl,
                 pubProfile.ftpUsername(),
@@ -68,8 +82,15 @@ public class FTPDeployCommand implements ICommand<FTPDeployCommand.IFTPDeployCom
                 workspace,
                 context.getSourceDirectory(),
                 context.getTargetDirectory(),
-                context.getFilePath()
+                context.getFilePath(),
+                getFtpConnections(context),
+                context.isFtpIncremental(),
+                context.isFtpDeleteRemovedFiles(),
+                context.isFtpsEnabled()
             ));
+            if (metrics != null) {
+                context.getRun().addAction(new FTPDeployMetricsAction(metrics));
+            }
         } catch (IOException | FTPException e) {
             context.logError("Fail to deploy to FTP: " + e.getMessage());
         } catch (InterruptedException e) {
@@ -77,7 +98,16 @@ public class FTPDeployCommand implements ICommand<FTPDeployCommand.IFTPDeployCom
         }
     }
 
-    private static final class FTPDeployCommandOnSlave extends MasterToSlaveCallable<Void, FTPException> {
+    private static int getFtpConnections(final IFTPDeployCommandData context) {
+        final int connections = context.getFtpConnections();
+        if (connections <= 0) {
+            return DEFAULT_FTP_CONNECTIONS;
+        }
+        return Math.min(connections, MAX_FTP_CONNECTIONS);
+    }
+
+    private static final class FTPDeployCommandOnSlave
+            extends MasterToSlaveCallable<FTPDeployMetrics, FTPException> {
 
         private final TaskListener listener;
         private final String ftpUrl;
@@ -87,6 +117,10 @@ public class FTPDeployCommand implements ICommand<FTPDeployCommand.IFTPDeployCom
         private final String sourceDirectory;
         private final String targetDirectory;
         private final String filePath;
+        private final int ftpConnections;
+        private final boolean incremental;
+        private final boolean deleteRemovedFiles;
+        private final boolean ftps;
 
         private FTPDeployCommandOnSlave(
                 final TaskListener listener,
@@ -96,7 +130,11 @@ public class FTPDeployCommand implements ICommand<FTPDeployCommand.IFTPDeployCom
                 final FilePath workspace,
                 final String sourceDirectory,
                 final String targetDirectory,
-                final String filePath) {
+                final String filePath,
+                final int ftpConnections,
+                final boolean incremental,
+                final boolean deleteRemovedFiles,
+                final boolean ftps) {
             this.listener = listener;
             this.ftpUrl = ftpUrl;
             this.ftpUserName = ftpUserName;
@@ -105,22 +143,26 @@ public class FTPDeployCommand implements ICommand<FTPDeployCommand.IFTPDeployCom
             this.sourceDirectory = sourceDirectory;
             this.targetDirectory = targetDirectory;
             this.filePath = filePath;
+            this.ftpConnections = ftpConnections;
+            this.incremental = incremental;
+            this.deleteRemovedFiles = deleteRemovedFiles;
+            this.ftps = ftps;
         }
 
 
         @Override
-        public Void call() throws FTPException {
-            FTPClient ftpClient = new FTPClient();
+        public FTPDeployMetrics call() throws FTPException {
+            final FTPDeployMetrics metrics = new FTPDeployMetrics();
+            final FTPClientFactory factory = new FTPClientFactory(ftpUrl, ftpUserName, ftpPassword, ftps,
+                    listener.getLogger());
+            final FTPConnectionPool pool = new FTPConnectionPool(factory, ftpConnections, listener.getLogger());
             try {
                 listener.getLogger().println(String.format("Starting to deploy to FTP: %s", ftpUrl));
 
-                ftpClient.connect(ftpUrl);
-                if (!ftpClient.login(ftpUserName, ftpPassword)) {
-                    throw new FTPException("Fail to login");
-                }
-
-                // Use passive mode to bypass client firewall
-                ftpClient.enterLocalPassiveMode();
+                final long connectStart = System.currentTimeMillis();
+                final FTPClient ftpClient = pool.getPrimary();
+                final long prepareStart = System.currentTimeMillis();
+                metrics.setConnectMillis(prepareStart - connectStart);
 
                 final String absTargetDirectory = SITE_ROOT + Util.fixNull(targetDirectory);
                 if (!ftpClient.changeWorkingDirectory(absTargetDirectory)) {
@@ -144,100 +186,288 @@ public class FTPDeployCommand implements ICommand<FTPDeployCommand.IFTPDeployCom
                     return null;
                 }
 
-                for (final FilePath file : files) {
-                    uploadFile(ftpClient, sourceDir, file);
+                final List<FilePath> changedFiles;
+                final Set<String> removedFiles;
+                FTPDeployManifest localManifest = null;
+                boolean updateManifest = false;
+                if (incremental) {
+                    localManifest = computeManifest(sourceDir, files);
+                    FTPDeployManifest remoteManifest = readManifest(ftpClient, absTargetDirectory);
+                    if (remoteManifest == null) {
+                        listener.getLogger().println("No previous deploy manifest found. Uploading all files.");
+                        remoteManifest = new FTPDeployManifest();
+                        updateManifest = true;
+                    }
+
+                    changedFiles = new ArrayList<>();
+                    for (final FilePath file : files) {
+                        if (!localManifest.isSame(remoteManifest, getRemoteName(sourceDir, file))) {
+                            changedFiles.add(file);
+                        }
+                    }
+                    if (deleteRemovedFiles) {
+                        removedFiles = remoteManifest.getPathsNotIn(localManifest);
+                    } else {
+                        removedFiles = Collections.emptySet();
+                    }
+                    listener.getLogger().println(String.format(
+                            "%d of %d file(s) changed and %d file(s) removed since last deployment",
+                            changedFiles.size(), files.length, removedFiles.size()));
+                    updateManifest = updateManifest || !changedFiles.isEmpty() || !removedFiles.isEmpty();
+                } else {
+                    changedFiles = Arrays.asList(files);
+                    removedFiles = Collections.emptySet();
+                }
+
+                if (!incremental || updateManifest) {
+                    // Remote files are about to change and the manifest won't describe them any more
+                    ftpClient.deleteFile(FTPDeployManifest.getRemotePath(absTargetDirectory));
+                }
+                // Earlier versions stored the manifest in the web root, where it is publicly readable
+                ftpClient.deleteFile(getRemotePath(absTargetDirectory, FTPDeployManifest.LEGACY_FILE_NAME));
+
+                // Deployment to tomcat root is uploaded under a temporary name and swapped into place at the end
+                final boolean swapRootWar = containsTomcatRootWar(sourceDir, absTargetDirectory, changedFiles);
+                createDirectories(ftpClient, sourceDir, absTargetDirectory, changedFiles);
+
+                final long uploadStart = System.currentTimeMillis();
+                metrics.setPrepareMillis(uploadStart - prepareStart);
+
+                if (!changedFiles.isEmpty()) {
+                    listener.getLogger().println(String.format("Uploading %d file(s) using %d connection(s)",
+                            changedFiles.size(), Math.min(pool.size(), changedFiles.size())));
+                }
+
+                // Small files are read into memory while the previous ones are being transferred
+                final FTPReadAhead readAhead = new FTPReadAhead(changedFiles);
+                final FTPResumableUploader uploader = new FTPResumableUploader(pool, readAhead, listener.getLogger());
+                readAhead.start();
+                try {
+                    pool.forEach(changedFiles, new FTPConnectionPool.Task<FilePath>() {
+                        @Override
+                        public void run(final FTPClient client, final FilePath file)
+                                throws IOException, FTPException, InterruptedException {
+                            uploadFile(uploader, client, sourceDir, absTargetDirectory, file, swapRootWar, metrics);
+                        }
+                    });
+                } finally {
+                    readAhead.close();
+                }
+                final long cleanupStart = System.currentTimeMillis();
+                metrics.setUploadMillis(cleanupStart - uploadStart);
+
+                if (swapRootWar) {
+                    // The primary connection may have been replaced during the upload
+                    swapTomcatRoot(pool.getPrimary());
                 }
+
+                pool.forEach(removedFiles, new FTPConnectionPool.Task<String>() {
+                    @Override
+                    public void run(final FTPClient client, final String remoteName) throws IOException {
+                        listener.getLogger().println("Removing remote file: " + remoteName);
+                        if (!client.deleteFile(getRemotePath(absTargetDirectory, remoteName))) {
+                            listener.getLogger().println("Fail to remove remote file: " + remoteName);
+                        }
+                    }
+                });
+                metrics.setFilesRemoved(removedFiles.size());
+
+                if (updateManifest) {
+                    writeManifest(pool.getPrimary(), absTargetDirectory, localManifest);
+                }
+
+                // Including the ones left by previous deployments which failed before their cleanup
+                removeOldTomcatRoots(pool);
+                metrics.setCleanupMillis(System.currentTimeMillis() - cleanupStart);
             } catch (IOException | InterruptedException e) {
                 throw new FTPException(e);
             } finally {
-                if (ftpClient.isConnected()) {
-                    try {
-                        ftpClient.disconnect();
-                    } catch (IOException e) {
-                        e.printStackTrace();
-                        listener.getLogger().println("Fail to disconnect from FTP: " + e.getMessage());
-                    }
+                pool.close();
+                listener.getLogger().println(String.format("FTP commands sent: %d", factory.getCommandCount()));
+                if (factory.isFtps()) {
+                    listener.getLogger().println(String.format(
+                            "TLS handshakes on data connections: %d resumed, %d full",
+                            factory.getResumedHandshakes(), factory.getFullHandshakes()));
                 }
             }
 
-            return null;
+            return metrics;
+        }
+
+        private void uploadFile(
+                final FTPResumableUploader uploader,
+                final FTPClient ftpClient,
+                final FilePath sourceDir,
+                final String absTargetDirectory,
+                final FilePath file,
+                final boolean swapRootWar,
+                final FTPDeployMetrics metrics) throws IOException, FTPException, InterruptedException {
+
+            final String remoteName = getRemoteName(sourceDir, file);
+            listener.getLogger().println(String.format("Uploading %s", remoteName));
+
+            String remotePath = getRemotePath(absTargetDirectory, remoteName);
+            if (swapRootWar && remotePath.equalsIgnoreCase(TOMCAT_ROOT_WAR)) {
+                remotePath = TOMCAT_ROOT_WAR_UPLOAD;
+            }
+
+            final long start = System.currentTimeMillis();
+            uploader.upload(ftpClient, file, remotePath);
+            metrics.recordUpload(file.length(), System.currentTimeMillis() - start);
+        }
+
+        private FTPDeployManifest computeManifest(final FilePath sourceDir, final FilePath[] files)
+                throws IOException, InterruptedException {
+            final FTPDeployManifest manifest = new FTPDeployManifest();
+            for (final FilePath file : files) {
+                manifest.put(getRemoteName(sourceDir, file), file);
+            }
+            return manifest;
         }
 
         /**
-         * Remove FTP directory recursively.
+         * Read the manifest of the previous deployment to the target directory.
+         *
          * @param ftpClient FTP client
-         * @param dir Directory to remove
+         * @param absTargetDirectory Target directory
+         * @return The manifest, or null if it doesn't exist or can't be read
          * @throws IOException
          */
-        private void removeFtpDirectory(final FTPClient ftpClient, final String dir)
-                throws IOException, FTPException {
-            String cwd = ftpClient.printWorkingDirectory();
-            // Return if folder does not exist
-            if (!ftpClient.changeWorkingDirectory(dir)) {
-                return;
+        private FTPDeployManifest readManifest(final FTPClient ftpClient, final String absTargetDirectory)
+                throws IOException {
+            final ByteArrayOutputStream stream = new ByteArrayOutputStream();
+            if (!ftpClient.retrieveFile(FTPDeployManifest.getRemotePath(absTargetDirectory), stream)) {
+                return null;
             }
 
-            ftpClient.changeWorkingDirectory(cwd);
-
-            listener.getLogger().println("Removing remote directory: " + dir);
+            try {
+                return FTPDeployManifest.read(new ByteArrayInputStream(stream.toByteArray()));
+            } catch (IOException e) {
+                listener.getLogger().println("Ignore unreadable deploy manifest: " + e.getMessage());
+                return null;
+            }
+        }
 
-            FTPFile[] subFiles = ftpClient.listFiles(dir);
-            if (subFiles.length > 0) {
-                for (FTPFile ftpFile : subFiles) {
-                    String fileName = ftpFile.getName();
-                    if (fileName.equals(".") || fileName.equals("..")) {
-                        // Skip
-                        continue;
-                    }
+        private void writeManifest(
+                final FTPClient ftpClient,
+                final String absTargetDirectory,
+                final FTPDeployManifest manifest) throws IOException {
+            final ByteArrayOutputStream stream = new ByteArrayOutputStream();
+            manifest.write(stream);
+            if (!ftpClient.storeFile(FTPDeployManifest.getRemotePath(absTargetDirectory),
+                    new ByteArrayInputStream(stream.toByteArray()))) {
+                // Not fatal, the next deployment will upload all files again
+                listener.getLogger().println("Fail to upload deploy manifest");
+            }
+        }
 
-                    String fullFileName = dir + "/" + fileName;
-                    if (ftpFile.isDirectory()) {
-                        // Remove sub directory recursively
-                        removeFtpDirectory(ftpClient, fullFileName);
-                    } else {
-                        // Delete regular file
-                        listener.getLogger().println("Removing remote file: " + fullFileName);
+        private static boolean containsTomcatRootWar(
+                final FilePath sourceDir,
+                final String absTargetDirectory,
+                final List<FilePath> files) {
+            for (final FilePath file : files) {
+                final String targetFilePath = getRemotePath(absTargetDirectory, getRemoteName(sourceDir, file));
+                if (targetFilePath.equalsIgnoreCase(TOMCAT_ROOT_WAR)) {
+                    return true;
+                }
+            }
+            return false;
+        }
 
-                        if (!ftpClient.deleteFile(fullFileName)) {
-                            throw new FTPException("Fail to delete file: " + fullFileName);
-                        }
-                    }
+        /**
+         * Swap the uploaded ROOT.war into place. Deployment to tomcat root requires removing the exploded root
+         * directory, which is moved away rather than deleted, so the app is only unavailable for a few renames
+         * instead of for the whole upload.
+         *
+         * If the uploaded file can't be renamed into place, the old root directory is moved back, so Tomcat keeps
+         * serving the previous version.
+         *
+         * @param ftpClient FTP client
+         * @throws IOException
+         * @throws FTPException
+         */
+        private void swapTomcatRoot(final FTPClient ftpClient) throws IOException, FTPException {
+            String oldRootDir = null;
+            final String cwd = ftpClient.printWorkingDirectory();
+            if (ftpClient.changeWorkingDirectory(TOMCAT_ROOT_DIR)) {
+                ftpClient.changeWorkingDirectory(cwd);
+
+                oldRootDir = TOMCAT_OLD_ROOT_DIR_PREFIX + System.currentTimeMillis();
+                if (!ftpClient.rename(TOMCAT_ROOT_DIR, oldRootDir)) {
+                    throw new FTPException("Fail to move directory " + TOMCAT_ROOT_DIR + " to " + oldRootDir);
                 }
             }
 
-            if (!ftpClient.removeDirectory(dir)) {
-                throw new FTPException("Fail to remove directory: " + dir);
+            // Not all servers overwrite an existing file on rename
+            ftpClient.deleteFile(TOMCAT_ROOT_WAR);
+            if (!ftpClient.rename(TOMCAT_ROOT_WAR_UPLOAD, TOMCAT_ROOT_WAR)) {
+                if (oldRootDir != null) {
+                    if (ftpClient.rename(oldRootDir, TOMCAT_ROOT_DIR)) {
+                        listener.getLogger().println("Moved previous directory back into place: " + TOMCAT_ROOT_DIR);
+                    } else {
+                        listener.getLogger().println(String.format("Fail to move directory %s back to %s",
+                                oldRootDir, TOMCAT_ROOT_DIR));
+                    }
+                }
+                throw new FTPException("Fail to rename " + TOMCAT_ROOT_WAR_UPLOAD + " to " + TOMCAT_ROOT_WAR);
             }
+            listener.getLogger().println("Swapped uploaded file into place: " + TOMCAT_ROOT_WAR);
         }
 
-        private void uploadFile(final FTPClient ftpClient, final FilePath sourceDir, final FilePath file)
-                throws IOException, FTPException, InterruptedException {
-
-            final String remoteName = FilenameUtils.separatorsToUnix(
-                    FilePathUtils.trimDirectoryPrefix(sourceDir, file));
-            listener.getLogger().println(String.format("Uploading %s", remoteName));
-
-            // Need some preparation in some cases
-            prepareDirectory(ftpClient, remoteName);
-
-            if (!ftpClient.setFileType(FTP.BINARY_FILE_TYPE)) {
-                throw new FTPException("Fail to set FTP file type to binary");
+        /**
+         * Remove the root directories moved away by {@link #swapTomcatRoot(FTPClient)}.
+         */
+        private void removeOldTomcatRoots(final FTPConnectionPool pool) throws InterruptedException {
+            final List<String> oldRootDirs = new ArrayList<>();
+            try {
+                for (final FTPFile entry : FTPDirectoryRemover.listEntries(pool.getPrimary(), SITE_ROOT)) {
+                    if (entry.isDirectory() && entry.getName().startsWith(TOMCAT_OLD_ROOT_DIR_NAME_PREFIX)) {
+                        oldRootDirs.add(SITE_ROOT + entry.getName());
+                    }
+                }
+            } catch (IOException | FTPException e) {
+                // Not fatal, the next deployment tries again
+                listener.getLogger().println("Fail to list old directories: " + e.getMessage());
+                return;
             }
 
-            try (InputStream stream = file.read()) {
-                if (!ftpClient.storeFile(remoteName, stream)) {
-                    throw new FTPException("Fail to upload file to: " + remoteName);
+            final FTPDirectoryRemover remover = new FTPDirectoryRemover(pool, listener.getLogger());
+            for (final String oldRootDir : oldRootDirs) {
+                try {
+                    remover.remove(oldRootDir);
+                } catch (IOException | FTPException e) {
+                    // Not fatal, the new version is already in place
+                    listener.getLogger().println(String.format("Fail to remove old directory %s: %s",
+                            oldRootDir, e.getMessage()));
                 }
             }
         }
 
-        private void prepareDirectory(final FTPClient ftpClient, final String fileName)
-                throws IOException, FTPException {
-            // Deployment to tomcat root requires removing root directory first
-            final String targetFilePath = FilenameUtils.concat(ftpClient.printWorkingDirectory(), fileName);
-            if (targetFilePath.equalsIgnoreCase(FilenameUtils.separatorsToSystem(TOMCAT_ROOT_WAR))) {
-                removeFtpDirectory(ftpClient, TOMCAT_ROOT_DIR);
+        /**
+         * Create the remote directories the files will be uploaded to. All of them are created on the primary
+         * connection before the upload starts, so each one is checked and created only once.
+         */
+        private void createDirectories(
+                final FTPClient ftpClient,
+                final FilePath sourceDir,
+                final String absTargetDirectory,
+                final List<FilePath> files) throws IOException, FTPException {
+            final Set<String> directories = new HashSet<>();
+            for (final FilePath file : files) {
+                directories.add(FilenameUtils.getFullPathNoEndSeparator(
+                        getRemotePath(absTargetDirectory, getRemoteName(sourceDir, file))));
             }
+
+            final FTPDirectoryTree tree = new FTPDirectoryTree(absTargetDirectory);
+            tree.createMissing(ftpClient, directories, listener.getLogger());
+        }
+
+        private static String getRemoteName(final FilePath sourceDir, final FilePath file) {
+            return FilenameUtils.separatorsToUnix(FilePathUtils.trimDirectoryPrefix(sourceDir, file));
+        }
+
+        private static String getRemotePath(final String absTargetDirectory, final String remoteName) {
+            return FilenameUtils.separatorsToUnix(FilenameUtils.concat(absTargetDirectory, remoteName));
         }
     }
 
@@ -250,5 +480,13 @@ public class FTPDeployCommand implements ICommand<FTPDeployCommand.IFTPDeployCom
         String getSourceDirectory();
 
         String getTargetDirectory();
+
+        int getFtpConnections();
+
+        boolean isFtpIncremental();
+
+        boolean isFtpDeleteRemovedFiles();
+
+        boolean isFtpsEnabled();
     }
 }
@@ -0,0 +1,155 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License. See License.txt in the project root for
+ * license information.
+ */
+package com.microsoft.jenkins.appservice.commands;
+
+import hudson.FilePath;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.io.FilenameUtils;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Size and SHA-256 of every file uploaded by an FTP deployment, keyed by the path relative to the target directory.
+ *
+ * The manifest is stored on the server so the next deployment can skip files that haven't changed. It is kept in
+ * {@code /site/}, outside of the web root, so it is not served to visitors of the app.
+ */
+final class FTPDeployManifest {
+
+    /**
+     * Name of the manifest file that earlier versions stored in the target directory, where the web server exposed it.
+     */
+    static final String LEGACY_FILE_NAME = ".azure-ftp-manifest";
+
+    private static final String DIRECTORY = "/site/";
+    private static final String FILE_NAME_PREFIX = ".azure-ftp-manifest-";
+    private static final int KEY_LENGTH = 16;
+
+    private static final String HEADER = "# azure-app-service ftp manifest v1";
+    private static final String SEPARATOR = "\t";
+    private static final int FIELDS = 3;
+    private static final Charset CHARSET = Charset.forName("UTF-8");
+
+    private final Map<String, Entry> entries = new TreeMap<>();
+
+    private static final class Entry {
+        private final long size;
+        private final String hash;
+
+        private Entry(final long size, final String hash) {
+            this.size = size;
+            this.hash = hash;
+        }
+    }
+
+    void put(final String path, final long size, final String hash) {
+        entries.put(path, new Entry(size, hash));
+    }
+
+    /**
+     * Add a local file to the manifest, computing its hash.
+     *
+     * @param path Path relative to the target directory
+     * @param file Local file
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    void put(final String path, final FilePath file) throws IOException, InterruptedException {
+        try (InputStream stream = file.read()) {
+            put(path, file.length(), DigestUtils.sha256Hex(stream));
+        }
+    }
+
+    /**
+     * Check if the manifest records the same content for the given path as the other manifest.
+     *
+     * @param other Other manifest
+     * @param path Path relative to the target directory
+     * @return If both manifests have the same size and hash for the path
+     */
+    boolean isSame(final FTPDeployManifest other, final String path) {
+        final Entry entry = entries.get(path);
+        final Entry otherEntry = other.entries.get(path);
+        return entry != null && otherEntry != null
+                && entry.size == otherEntry.size && entry.hash.equals(otherEntry.hash);
+    }
+
+    /**
+     * @param other Other manifest
+     * @return Paths in this manifest but not in the other one
+     */
+    Set<String> getPathsNotIn(final FTPDeployManifest other) {
+        final Set<String> paths = new TreeSet<>(entries.keySet());
+        paths.removeAll(other.entries.keySet());
+        return paths;
+    }
+
+    int size() {
+        return entries.size();
+    }
+
+    /**
+     * @param absTargetDirectory Absolute target directory of the deployment
+     * @return Path of the manifest of the target directory, keyed by the hash of the normalized directory
+     */
+    static String getRemotePath(final String absTargetDirectory) {
+        final String normalized = FilenameUtils.normalizeNoEndSeparator(absTargetDirectory, true);
+        final String key = DigestUtils.sha256Hex(normalized == null ? absTargetDirectory : normalized);
+        return DIRECTORY + FILE_NAME_PREFIX + key.substring(0, KEY_LENGTH);
+    }
+
+    static FTPDeployManifest read(final InputStream stream) throws IOException {
+        final FTPDeployManifest manifest = new FTPDeployManifest();
+        final BufferedReader reader = new BufferedReader(new InputStreamReader(stream, CHARSET));
+        String line = reader.readLine();
+        if (line == null || !line.equals(HEADER)) {
+            throw new IOException("Unrecognized FTP deploy manifest");
+        }
+
+        line = reader.readLine();
+        while (line != null) {
+            if (!line.isEmpty()) {
+                final String[] fields = line.split(SEPARATOR, FIELDS);
+                if (fields.length != FIELDS) {
+                    throw new IOException("Malformed FTP deploy manifest entry: " + line);
+                }
+                try {
+                    manifest.put(fields[2], Long.parseLong(fields[1]), fields[0]);
+                } catch (NumberFormatException e) {
+                    throw new IOException("Malformed FTP deploy manifest entry: " + line, e);
+                }
+            }
+            line = reader.readLine();
+        }
+        return manifest;
+    }
+
+    void write(final OutputStream stream) throws IOException {
+        final Writer writer = new OutputStreamWriter(stream, CHARSET);
+        writer.write(HEADER);
+        writer.write('\n');
+        for (final Map.Entry<String, Entry> entry : entries.entrySet()) {
+            writer.write(entry.getValue().hash);
+            writer.write(SEPARATOR);
+            writer.write(String.valueOf(entry.getValue().size));
+            writer.write(SEPARATOR);
+            writer.write(entry.getKey());
+            writer.write('\n');
+        }
+        writer.flush();
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License. See License.txt in the project root for
+ * license information.
+ */
+package com.microsoft.jenkins.appservice.commands;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * Timings and transfer counters of a single FTP deployment. Collected on the agent and sent back to the master once
+ * the deployment is done.
+ */
+public final class FTPDeployMetrics implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+    private static final long MILLIS_PER_SECOND = 1000;
+
+    /**
+     * Upper bounds (inclusive, in milliseconds) of the upload latency histogram buckets. The last bucket counts
+     * everything above the last bound.
+     */
+    static final long[] LATENCY_BUCKETS = {10, 50, 100, 500, 1000, 5000, 10000};
+
+    private long connectMillis;
+    private long prepareMillis;
+    private long uploadMillis;
+    private long cleanupMillis;
+
+    private int filesUploaded;
+    private int filesRemoved;
+    private long bytesUploaded;
+    private final long[] latencyCounts = new long[LATENCY_BUCKETS.length + 1];
+
+    /**
+     * Record the upload of a single file. Called concurrently by the pooled connections.
+     *
+     * @param bytes Size of the file
+     * @param millis Time taken to upload the file
+     */
+    synchronized void recordUpload(final long bytes, final long millis) {
+        filesUploaded++;
+        bytesUploaded += bytes;
+
+        int bucket = 0;
+        while (bucket < LATENCY_BUCKETS.length && millis > LATENCY_BUCKETS[bucket]) {
+            bucket++;
+        }
+        latencyCounts[bucket]++;
+    }
+
+    synchronized void setFilesRemoved(final int filesRemoved) {
+        this.filesRemoved = filesRemoved;
+    }
+
+    synchronized void setConnectMillis(final long connectMillis) {
+        this.connectMillis = connectMillis;
+    }
+
+    synchronized void setPrepareMillis(final long prepareMillis) {
+        this.prepareMillis = prepareMillis;
+    }
+
+    synchronized void setUploadMillis(final long uploadMillis) {
+        this.uploadMillis = uploadMillis;
+    }
+
+    synchronized void setCleanupMillis(final long cleanupMillis) {
+        this.cleanupMillis = cleanupMillis;
+    }
+
+    /**
+     * @return Time to connect and login on the primary connection
+     */
+    public synchronized long getConnectMillis() {
+        return connectMillis;
+    }
+
+    /**
+     * @return Time to prepare the target directory, from listing the files to creating the remote directories
+     */
+    public synchronized long getPrepareMillis() {
+        return prepareMillis;
+    }
+
+    /**
+     * @return Time to upload all the files, including opening the extra pooled connections
+     */
+    public synchronized long getUploadMillis() {
+        return uploadMillis;
+    }
+
+    /**
+     * @return Time to swap files into place, remove deleted files and write the manifest
+     */
+    public synchronized long getCleanupMillis() {
+        return cleanupMillis;
+    }
+
+    public synchronized long getTotalMillis() {
+        return connectMillis + prepareMillis + uploadMillis + cleanupMillis;
+    }
+
+    public synchronized int getFilesUploaded() {
+        return filesUploaded;
+    }
+
+    public synchronized int getFilesRemoved() {
+        return filesRemoved;
+    }
+
+    public synchronized long getBytesUploaded() {
+        return bytesUploaded;
+    }
+
+    /**
+     * @return Upload throughput in bytes per second, or 0 if nothing was uploaded
+     */
+    public synchronized long getBytesPerSecond() {
+        if (uploadMillis <= 0) {
+            return 0;
+        }
+        return bytesUploaded * MILLIS_PER_SECOND / uploadMillis;
+    }
+
+    /**
+     * @return Number of uploads per latency bucket, see {@link #LATENCY_BUCKETS}
+     */
+    public synchronized long[] getLatencyCounts() {
+        return Arrays.copyOf(latencyCounts, latencyCounts.length);
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License. See License.txt in the project root for
+ * license information.
+ */
+package com.microsoft.jenkins.appservice.commands;
+
+import hudson.model.Api;
+import hudson.model.Run;
+import jenkins.model.RunAction2;
+import org.kohsuke.stapler.export.Exported;
+import org.kohsuke.stapler.export.ExportedBean;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Build action exposing the metrics of an FTP deployment, on the build page and as JSON/XML through the remote API
+ * ({@code <build url>/ftpDeployMetrics/api/json}).
+ */
+@ExportedBean
+public class FTPDeployMetricsAction implements RunAction2 {
+
+    private final FTPDeployMetrics metrics;
+    private transient Run<?, ?> run;
+
+    public FTPDeployMetricsAction(final FTPDeployMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    @Override
+    public String getIconFileName() {
+        return "graph.png";
+    }
+
+    @Override
+    public String getDisplayName() {
+        return "FTP Deployment Metrics";
+    }
+
+    @Override
+    public String getUrlName() {
+        return "ftpDeployMetrics";
+    }
+
+    @Override
+    public void onAttached(final Run<?, ?> r) {
+        this.run = r;
+    }
+
+    @Override
+    public void onLoad(final Run<?, ?> r) {
+        this.run = r;
+    }
+
+    public Run<?, ?> getRun() {
+        return run;
+    }
+
+    public Api getApi() {
+        return new Api(this);
+    }
+
+    @Exported
+    public long getConnectMillis() {
+        return metrics.getConnectMillis();
+    }
+
+    @Exported
+    public long getPrepareMillis() {
+        return metrics.getPrepareMillis();
+    }
+
+    @Exported
+    public long getUploadMillis() {
+        return metrics.getUploadMillis();
+    }
+
+    @Exported
+    public long getCleanupMillis() {
+        return metrics.getCleanupMillis();
+    }
+
+    @Exported
+    public long getTotalMillis() {
+        return metrics.getTotalMillis();
+    }
+
+    @Exported
+    public int getFilesUploaded() {
+        return metrics.getFilesUploaded();
+    }
+
+    @Exported
+    public int getFilesRemoved() {
+        return metrics.getFilesRemoved();
+    }
+
+    @Exported
+    public long getBytesUploaded() {
+        return metrics.getBytesUploaded();
+    }
+
+    @Exported
+    public long getBytesPerSecond() {
+        return metrics.getBytesPerSecond();
+    }
+
+    @Exported
+    public List<LatencyBucket> getUploadLatency() {
+        final long[] counts = metrics.getLatencyCounts();
+        final List<LatencyBucket> buckets = new ArrayList<>(counts.length);
+        for (int i = 0; i < counts.length; i++) {
+            final long upperBound = i < FTPDeployMetrics.LATENCY_BUCKETS.length
+                    ? FTPDeployMetrics.LATENCY_BUCKETS[i] : -1;
+            buckets.add(new LatencyBucket(upperBound, counts[i]));
+        }
+        return buckets;
+    }
+
+    /**
+     * Number of files uploaded within a latency range.
+     */
+    @ExportedBean(defaultVisibility = 2)
+    public static final class LatencyBucket {
+        private final long upperBoundMillis;
+        private final long count;
+
+        LatencyBucket(final long upperBoundMillis, final long count) {
+            this.upperBoundMillis = upperBoundMillis;
+            this.count = count;
+        }
+
+        /**
+         * @return Inclusive upper bound of the bucket in milliseconds, or -1 for the last, unbounded bucket
+         */
+        @Exported
+        public long getUpperBoundMillis() {
+            return upperBoundMillis;
+        }
+
+        @Exported
+        public long getCount() {
+            return count;
+        }
+    }
+}
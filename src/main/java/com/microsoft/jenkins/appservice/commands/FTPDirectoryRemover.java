@@ -0,0 +1,120 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License. See License.txt in the project root for
+ * license information.
+ */
+package com.microsoft.jenkins.appservice.commands;
+
+import org.apache.commons.net.ftp.FTPClient;
+import org.apache.commons.net.ftp.FTPFile;
+import org.apache.commons.net.ftp.FTPReply;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Removes a remote directory recursively. The tree is listed once, breadth first, on the primary connection, then the
+ * files are deleted over all the pooled connections and finally the directories are removed bottom-up, one level at
+ * a time.
+ */
+final class FTPDirectoryRemover {
+
+    private final FTPConnectionPool pool;
+    private final PrintStream logger;
+
+    FTPDirectoryRemover(final FTPConnectionPool pool, final PrintStream logger) {
+        this.pool = pool;
+        this.logger = logger;
+    }
+
+    /**
+     * Remove the directory and everything below it. Nothing is done if the directory doesn't exist.
+     *
+     * @param dir Absolute directory to remove
+     * @return Number of files deleted
+     * @throws IOException
+     * @throws FTPDeployCommand.FTPException
+     * @throws InterruptedException
+     */
+    int remove(final String dir) throws IOException, FTPDeployCommand.FTPException, InterruptedException {
+        final FTPClient ftpClient = pool.getPrimary();
+        final String cwd = ftpClient.printWorkingDirectory();
+        // Return if folder does not exist
+        if (!ftpClient.changeWorkingDirectory(dir)) {
+            return 0;
+        }
+        ftpClient.changeWorkingDirectory(cwd);
+
+        logger.println("Removing remote directory: " + dir);
+        final long start = System.currentTimeMillis();
+
+        // Directories grouped by depth, so every level can be removed once the one below is gone
+        final List<List<String>> levels = new ArrayList<>();
+        final List<String> files = new ArrayList<>();
+        List<String> level = new ArrayList<>();
+        level.add(dir);
+        while (!level.isEmpty()) {
+            levels.add(level);
+            final List<String> next = new ArrayList<>();
+            for (final String parent : level) {
+                for (final FTPFile entry : listEntries(ftpClient, parent)) {
+                    final String path = parent + "/" + entry.getName();
+                    if (entry.isDirectory()) {
+                        next.add(path);
+                    } else {
+                        files.add(path);
+                    }
+                }
+            }
+            level = next;
+        }
+
+        pool.forEach(files, new FTPConnectionPool.Task<String>() {
+            @Override
+            public void run(final FTPClient client, final String file)
+                    throws IOException, FTPDeployCommand.FTPException {
+                logger.println("Removing remote file: " + file);
+                if (!client.deleteFile(file)) {
+                    throw new FTPDeployCommand.FTPException("Fail to delete file: " + file);
+                }
+            }
+        });
+
+        for (int i = levels.size() - 1; i >= 0; i--) {
+            pool.forEach(levels.get(i), new FTPConnectionPool.Task<String>() {
+                @Override
+                public void run(final FTPClient client, final String directory)
+                        throws IOException, FTPDeployCommand.FTPException {
+                    if (!client.removeDirectory(directory)) {
+                        throw new FTPDeployCommand.FTPException("Fail to remove directory: " + directory);
+                    }
+                }
+            });
+        }
+
+        logger.println(String.format("Removed remote directory %s: %d file(s) deleted in %d ms",
+                dir, files.size(), System.currentTimeMillis() - start));
+        return files.size();
+    }
+
+    /**
+     * @return Entries of the directory, without its "." and ".." entries
+     */
+    static List<FTPFile> listEntries(final FTPClient ftpClient, final String dir) throws IOException {
+        FTPFile[] entries = ftpClient.mlistDir(dir);
+        if (!FTPReply.isPositiveCompletion(ftpClient.getReplyCode())) {
+            // MLSD is not supported by the server
+            entries = ftpClient.listFiles(dir);
+        }
+
+        final List<FTPFile> result = new ArrayList<>();
+        for (final FTPFile entry : entries) {
+            if (entry != null && !entry.getName().equals(".") && !entry.getName().equals("..")) {
+                result.add(entry);
+            }
+        }
+        return result;
+    }
+}
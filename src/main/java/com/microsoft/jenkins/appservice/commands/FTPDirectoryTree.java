@@ -0,0 +1,145 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License. See License.txt in the project root for
+ * license information.
+ */
+package com.microsoft.jenkins.appservice.commands;
+
+import org.apache.commons.io.FilenameUtils;
+import org.apache.commons.net.ftp.FTPClient;
+import org.apache.commons.net.ftp.FTPFile;
+import org.apache.commons.net.ftp.FTPReply;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * The remote directories below a root directory, so missing directories can be created once before uploading instead
+ * of probing the server for every file.
+ *
+ * Only the part of the remote tree that leads to the directories actually needed is listed.
+ */
+final class FTPDirectoryTree {
+
+    private final String root;
+    private final Set<String> known = new HashSet<>();
+
+    /**
+     * @param root Root directory, which must exist on the server
+     */
+    FTPDirectoryTree(final String root) {
+        this.root = normalize(root);
+        known.add(this.root);
+    }
+
+    /**
+     * Create all the given directories (and their parents) that don't exist on the server yet.
+     *
+     * @param ftpClient FTP client
+     * @param directories Absolute directories below the root
+     * @param logger Logger
+     * @return Number of directories created
+     * @throws IOException
+     * @throws FTPDeployCommand.FTPException
+     */
+    int createMissing(final FTPClient ftpClient, final Collection<String> directories, final PrintStream logger)
+            throws IOException, FTPDeployCommand.FTPException {
+        final Set<String> needed = withParents(directories);
+        load(ftpClient, needed);
+
+        int created = 0;
+        for (final String dir : sortParentFirst(needed)) {
+            if (known.contains(dir)) {
+                continue;
+            }
+
+            logger.println("Creating remote directory: " + dir);
+            if (!ftpClient.makeDirectory(dir) && !ftpClient.changeWorkingDirectory(dir)) {
+                throw new FTPDeployCommand.FTPException("Fail to make directory: " + dir);
+            }
+            known.add(dir);
+            created++;
+        }
+        return created;
+    }
+
+    /**
+     * List the remote tree in a single pass, only descending into directories that lead to a needed directory.
+     */
+    private void load(final FTPClient ftpClient, final Set<String> needed) throws IOException {
+        final Queue<String> queue = new ArrayDeque<>();
+        queue.add(root);
+        while (!queue.isEmpty()) {
+            final String dir = queue.poll();
+            if (!hasNeededChild(dir, needed)) {
+                continue;
+            }
+
+            for (final FTPFile file : listDirectories(ftpClient, dir)) {
+                final String child = dir + "/" + file.getName();
+                if (needed.contains(child)) {
+                    known.add(child);
+                    queue.add(child);
+                }
+            }
+        }
+    }
+
+    private static FTPFile[] listDirectories(final FTPClient ftpClient, final String dir) throws IOException {
+        final FTPFile[] entries = ftpClient.mlistDir(dir);
+        if (!FTPReply.isPositiveCompletion(ftpClient.getReplyCode())) {
+            // MLSD is not supported by the server
+            return ftpClient.listDirectories(dir);
+        }
+
+        final List<FTPFile> dirs = new ArrayList<>();
+        for (final FTPFile entry : entries) {
+            if (entry != null && entry.isDirectory() && !isDotEntry(entry.getName())) {
+                dirs.add(entry);
+            }
+        }
+        return dirs.toArray(new FTPFile[dirs.size()]);
+    }
+
+    private static boolean isDotEntry(final String name) {
+        return name.equals(".") || name.equals("..");
+    }
+
+    private static boolean hasNeededChild(final String dir, final Set<String> needed) {
+        final String prefix = dir + "/";
+        for (final String path : needed) {
+            if (path.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private Set<String> withParents(final Collection<String> directories) {
+        final Set<String> result = new HashSet<>();
+        for (final String directory : directories) {
+            String dir = normalize(directory);
+            while (dir.startsWith(root + "/") && result.add(dir)) {
+                dir = FilenameUtils.getFullPathNoEndSeparator(dir);
+            }
+        }
+        return result;
+    }
+
+    private static List<String> sortParentFirst(final Set<String> directories) {
+        // A parent is always a prefix of its children, so it sorts before them
+        return new ArrayList<>(new TreeSet<>(directories));
+    }
+
+    static String normalize(final String path) {
+        return FilenameUtils.separatorsToUnix(FilenameUtils.normalizeNoEndSeparator(path, true));
+    }
+}
@@ -0,0 +1,182 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License. See License.txt in the project root for
+ * license information.
+ */
+package com.microsoft.jenkins.appservice.commands;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import hudson.FilePath;
+import org.apache.commons.io.IOUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Reads small files into memory ahead of the upload, in the order they are queued, so the next files are ready while
+ * the current ones are being transferred.
+ *
+ * The memory used is bounded. A file that isn't read ahead yet when its upload starts is read directly from disk,
+ * and a file is only ever read ahead once: opening it again (for example to retry the upload) reads it from disk.
+ */
+final class FTPReadAhead {
+
+    /**
+     * Largest file that is read ahead, configurable on the agent running the deployment.
+     */
+    static final int MAX_FILE_SIZE = Integer.getInteger(
+            FTPReadAhead.class.getName() + ".maxFileSize", 1024 * 1024);
+
+    /**
+     * Maximum number of bytes held in memory, configurable on the agent running the deployment.
+     */
+    static final int MAX_BUFFERED = Integer.getInteger(
+            FTPReadAhead.class.getName() + ".maxBuffered", 32 * 1024 * 1024);
+
+    private enum State {
+        NEW, READING, TAKEN
+    }
+
+    private static final class Entry {
+        private final long size;
+        private final FutureTask<byte[]> task;
+        private State state = State.NEW;
+
+        private Entry(final long size, final FutureTask<byte[]> task) {
+            this.size = size;
+            this.task = task;
+        }
+    }
+
+    // Entries leave the queue once picked up, so content is only held until the upload takes it
+    private final Queue<Entry> queue = new ArrayDeque<>();
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final long maxBuffered;
+    private long buffered;
+    private ExecutorService executor;
+
+    FTPReadAhead(final Collection<FilePath> files) throws IOException, InterruptedException {
+        this(files, MAX_FILE_SIZE, MAX_BUFFERED);
+    }
+
+    FTPReadAhead(final Collection<FilePath> files, final long maxFileSize, final long maxBuffered)
+            throws IOException, InterruptedException {
+        this.maxBuffered = maxBuffered;
+        for (final FilePath file : files) {
+            final long size = file.length();
+            if (size > maxFileSize) {
+                continue;
+            }
+
+            final Entry entry = new Entry(size, new FutureTask<>(new Callable<byte[]>() {
+                @Override
+                public byte[] call() throws Exception {
+                    try (InputStream stream = file.read()) {
+                        return IOUtils.toByteArray(stream);
+                    }
+                }
+            }));
+            queue.add(entry);
+            entries.put(file.getRemote(), entry);
+        }
+    }
+
+    /**
+     * Start reading the files ahead on a background thread.
+     */
+    void start() {
+        if (queue.isEmpty()) {
+            return;
+        }
+
+        executor = Executors.newSingleThreadExecutor(
+                new ThreadFactoryBuilder().setNameFormat("azure-ftp-read-ahead-%d").setDaemon(true).build());
+        executor.submit(new Callable<Void>() {
+            @Override
+            public Void call() throws InterruptedException {
+                Entry entry = queue.poll();
+                while (entry != null) {
+                    if (claimForReading(entry)) {
+                        entry.task.run();
+                    }
+                    entry = queue.poll();
+                }
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Open the file for upload, from memory if it has been read ahead.
+     *
+     * @param file File to open
+     * @return Stream of the file content
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    InputStream open(final FilePath file) throws IOException, InterruptedException {
+        final Entry entry = entries.remove(file.getRemote());
+        if (entry == null || !claimForUpload(entry)) {
+            return file.read();
+        }
+
+        try {
+            return new ByteArrayInputStream(entry.task.get());
+        } catch (ExecutionException e) {
+            // Let the upload report the problem when reading the file again
+            return file.read();
+        } finally {
+            release(entry.size);
+        }
+    }
+
+    /**
+     * Stop reading ahead and drop all buffered content.
+     */
+    synchronized void close() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+        entries.clear();
+        notifyAll();
+    }
+
+    private synchronized boolean claimForReading(final Entry entry) throws InterruptedException {
+        while (entry.state == State.NEW && buffered > 0 && buffered + entry.size > maxBuffered) {
+            wait();
+        }
+        if (entry.state != State.NEW) {
+            return false;
+        }
+        entry.state = State.READING;
+        buffered += entry.size;
+        return true;
+    }
+
+    /**
+     * @return true if the entry is (being) read ahead, false if the upload has to read the file itself
+     */
+    private synchronized boolean claimForUpload(final Entry entry) {
+        final boolean readAhead = entry.state == State.READING;
+        entry.state = State.TAKEN;
+        // Reader may be waiting for this entry
+        notifyAll();
+        return readAhead;
+    }
+
+    private synchronized void release(final long size) {
+        buffered -= size;
+        notifyAll();
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License. See License.txt in the project root for
+ * license information.
+ */
+package com.microsoft.jenkins.appservice.commands;
+
+import hudson.FilePath;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.CountingInputStream;
+import org.apache.commons.net.ftp.FTPClient;
+import org.apache.commons.net.ftp.FTPReply;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+
+/**
+ * Uploads a file and resumes it from the last byte received by the server when the transfer is interrupted, so a
+ * dropped connection near the end of a large artifact doesn't restart it from scratch.
+ *
+ * After a failure, the connection is replaced and the size of the partial remote file is queried with SIZE. The
+ * transfer then continues with REST and STOR from that offset, bounded by the bytes this upload actually sent so a
+ * stale remote file is never mistaken for a partial upload. Retries are bounded and back off exponentially.
+ */
+final class FTPResumableUploader {
+
+    static final int DEFAULT_MAX_RETRIES = 3;
+    static final long DEFAULT_INITIAL_BACKOFF = 1000;
+
+    private static final String SIZE_COMMAND = "SIZE";
+
+    private final FTPConnectionPool pool;
+    private final FTPReadAhead readAhead;
+    private final int maxRetries;
+    private final long initialBackoff;
+    private final PrintStream logger;
+
+    FTPResumableUploader(final FTPConnectionPool pool, final FTPReadAhead readAhead, final PrintStream logger) {
+        this(pool, readAhead, DEFAULT_MAX_RETRIES, DEFAULT_INITIAL_BACKOFF, logger);
+    }
+
+    /**
+     * @param pool Pool the connections belong to
+     * @param readAhead Read-ahead of the files to upload, can be null
+     * @param maxRetries Maximum number of retries of a single file
+     * @param initialBackoff Delay before the first retry in milliseconds, doubled for every following retry
+     * @param logger Logger
+     */
+    FTPResumableUploader(
+            final FTPConnectionPool pool,
+            final FTPReadAhead readAhead,
+            final int maxRetries,
+            final long initialBackoff,
+            final PrintStream logger) {
+        this.pool = pool;
+        this.readAhead = readAhead;
+        this.maxRetries = maxRetries;
+        this.initialBackoff = initialBackoff;
+        this.logger = logger;
+    }
+
+    /**
+     * Upload the file, retrying and resuming on transient failures.
+     *
+     * @param ftpClient Pooled connection to start the upload on
+     * @param file File to upload
+     * @param remotePath Absolute remote path
+     * @throws IOException
+     * @throws FTPDeployCommand.FTPException
+     * @throws InterruptedException
+     */
+    void upload(final FTPClient ftpClient, final FilePath file, final String remotePath)
+            throws IOException, FTPDeployCommand.FTPException, InterruptedException {
+        final long length = file.length();
+        // End of the last transfer which reached the server, the remote file holds nothing of this upload beyond it.
+        // A remote file left by a previous deployment must not be resumed when an attempt failed before sending.
+        final long[] sent = {0};
+        FTPClient client = ftpClient;
+        for (int attempt = 0;; attempt++) {
+            try {
+                long offset = 0;
+                if (attempt > 0) {
+                    offset = Math.min(getRemoteSize(client, remotePath), sent[0]);
+                    if (offset > 0 && offset == length) {
+                        // The whole file was sent, only the final reply was lost
+                        return;
+                    }
+                }
+
+                if (store(client, file, remotePath, offset, sent)) {
+                    return;
+                }
+
+                if (!FTPReply.isNegativeTransient(client.getReplyCode()) || attempt >= maxRetries) {
+                    throw new FTPDeployCommand.FTPException("Fail to upload file to: " + remotePath);
+                }
+                logRetry(remotePath, client.getReplyString().trim(), attempt);
+            } catch (IOException e) {
+                if (attempt >= maxRetries) {
+                    throw e;
+                }
+                logRetry(remotePath, e.getMessage(), attempt);
+            }
+
+            Thread.sleep(initialBackoff << attempt);
+            client = pool.reconnect(client);
+        }
+    }
+
+    private boolean store(
+            final FTPClient ftpClient,
+            final FilePath file,
+            final String remotePath,
+            final long offset,
+            final long[] sent) throws IOException, InterruptedException {
+        try (InputStream stream = readAhead != null ? readAhead.open(file) : file.read()) {
+            if (offset > 0) {
+                IOUtils.skipFully(stream, offset);
+                ftpClient.setRestartOffset(offset);
+            }
+            final CountingInputStream counter = new CountingInputStream(stream);
+            try {
+                return ftpClient.storeFile(remotePath, counter);
+            } finally {
+                // The data is only read once the server accepted the transfer
+                if (counter.getByteCount() > 0) {
+                    sent[0] = offset + counter.getByteCount();
+                }
+            }
+        }
+    }
+
+    /**
+     * @return Size of the remote file, or 0 if it doesn't exist or the server doesn't support SIZE
+     */
+    private static long getRemoteSize(final FTPClient ftpClient, final String remotePath) throws IOException {
+        if (ftpClient.sendCommand(SIZE_COMMAND, remotePath) != FTPReply.FILE_STATUS) {
+            return 0;
+        }
+
+        // Reply is "213 <size>"
+        final String[] reply = ftpClient.getReplyString().trim().split("\\s+");
+        try {
+            return Long.parseLong(reply[reply.length - 1]);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private void logRetry(final String remotePath, final String reason, final int attempt) {
+        logger.println(String.format("Upload of %s interrupted: %s. Resuming in %d ms (retry %d of %d)",
+                remotePath, reason, initialBackoff << attempt, attempt + 1, maxRetries));
+    }
+}
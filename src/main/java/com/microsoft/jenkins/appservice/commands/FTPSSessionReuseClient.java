@@ -0,0 +1,122 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License. See License.txt in the project root for
+ * license information.
+ */
+package com.microsoft.jenkins.appservice.commands;
+
+import org.apache.commons.net.ftp.FTPSClient;
+
+import javax.net.ssl.HandshakeCompletedEvent;
+import javax.net.ssl.HandshakeCompletedListener;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.SSLSessionContext;
+import javax.net.ssl.SSLSocket;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.net.Socket;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Explicit FTPS client that resumes the TLS session of the control connection on its data connections.
+ *
+ * Servers like IIS require the data connection to reuse the control connection session, and without reuse every
+ * file transfer costs a full TLS handshake. JSSE only resumes a session for the same host and port, while the data
+ * connection uses a different port, so the session is put into the session cache for the data connection address
+ * before its handshake.
+ *
+ * This relies on JSSE internals, with two requirements:
+ * <ul>
+ *     <li>On Java 9 and later, the JSSE package must be opened to the plugin by starting the JVM running the
+ *     deployment with {@code --add-opens java.base/sun.security.ssl=ALL-UNNAMED}.</li>
+ *     <li>The control connection must negotiate TLS 1.2 or earlier. TLS 1.3 resumes sessions with pre-shared keys
+ *     issued by the server, which can't be copied to another address this way.</li>
+ * </ul>
+ * Otherwise the reason is reported to the {@link HandshakeListener}, which prints it to the build log, and the data
+ * connections use full handshakes.
+ *
+ * All the connections sharing the same {@link SSLContext} also share its session cache, so the control connections
+ * of a connection pool resume each other's session as well.
+ */
+class FTPSSessionReuseClient extends FTPSClient {
+
+    private static final String TLS_1_3 = "TLSv1.3";
+    private static final String SESSION_CACHE_FIELD = "sessionHostPortCache";
+
+    /**
+     * Receives the handshakes completed on data connections.
+     */
+    interface HandshakeListener {
+        void handshakeCompleted(boolean resumed);
+
+        /**
+         * Called for each data connection which can't resume the session of the control connection.
+         *
+         * @param reason Why the session can't be reused, and how to enable its reuse if possible
+         */
+        void sessionReuseUnavailable(String reason);
+    }
+
+    private final HandshakeListener handshakeListener;
+
+    FTPSSessionReuseClient(final SSLContext context, final HandshakeListener handshakeListener) {
+        super(false, context);
+        this.handshakeListener = handshakeListener;
+    }
+
+    @Override
+    protected void _prepareDataSocket_(final Socket socket) throws IOException {
+        if (!(socket instanceof SSLSocket) || !(_socket_ instanceof SSLSocket)) {
+            return;
+        }
+
+        final SSLSession session = ((SSLSocket) _socket_).getSession();
+        final SSLSocket dataSocket = (SSLSocket) socket;
+        final byte[] controlSessionId = session.getId();
+        dataSocket.addHandshakeCompletedListener(new HandshakeCompletedListener() {
+            @Override
+            public void handshakeCompleted(final HandshakeCompletedEvent event) {
+                handshakeListener.handshakeCompleted(Arrays.equals(controlSessionId, event.getSession().getId()));
+            }
+        });
+
+        if (session.isValid()) {
+            cacheSession(session, dataSocket);
+        }
+    }
+
+    private void cacheSession(final SSLSession session, final SSLSocket socket) {
+        final SSLSessionContext context = session.getSessionContext();
+        if (context == null) {
+            return;
+        }
+        if (TLS_1_3.equals(session.getProtocol())) {
+            handshakeListener.sessionReuseUnavailable(
+                    "the control connection uses TLS 1.3, which only resumes sessions through server tickets");
+            return;
+        }
+
+        try {
+            final Field field = context.getClass().getDeclaredField(SESSION_CACHE_FIELD);
+            field.setAccessible(true);
+            final Object cache = field.get(context);
+            final Method put = cache.getClass().getDeclaredMethod("put", Object.class, Object.class);
+            put.setAccessible(true);
+
+            final String port = String.valueOf(socket.getPort());
+            put.invoke(cache, getCacheKey(socket.getInetAddress().getHostName(), port), session);
+            put.invoke(cache, getCacheKey(socket.getInetAddress().getHostAddress(), port), session);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            handshakeListener.sessionReuseUnavailable("the session cache of this Java runtime is not accessible ("
+                    + e + "). On Java 9 and later, start the JVM running the deployment with "
+                    + "--add-opens java.base/sun.security.ssl=ALL-UNNAMED");
+        }
+    }
+
+    private static String getCacheKey(final String host, final String port) {
+        return (host + ":" + port).toLowerCase(Locale.ROOT);
+    }
+}
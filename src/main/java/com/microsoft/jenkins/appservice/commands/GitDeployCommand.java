@@ -6,6 +6,7 @@
 package com.microsoft.jenkins.appservice.commands;
 
 import com.cloudbees.plugins.credentials.CredentialsScope;
+import com.cloudbees.plugins.credentials.common.StandardUsernamePasswordCredentials;
 import com.cloudbees.plugins.credentials.impl.UsernamePasswordCredentialsImpl;
 import com.microsoft.azure.management.appservice.PublishingProfile;
 import com.microsoft.jenkins.appservice.util.FilePathUtils;
@@ -16,36 +17,71 @@ import hudson.model.AbstractBuild;
 import hudson.model.Node;
 import hudson.model.Run;
 import hudson.model.TaskListener;
-import hudson.plugins.git.Branch;
+import hudson.plugins.git.GitException;
 import hudson.plugins.git.GitTool;
 import hudson.remoting.VirtualChannel;
+import jenkins.security.MasterToSlaveCallable;
+import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.FilenameUtils;
+import org.apache.commons.lang.StringUtils;
+import org.eclipse.jgit.api.ResetCommand;
+import org.eclipse.jgit.api.errors.GitAPIException;
 import org.eclipse.jgit.dircache.DirCache;
-import org.eclipse.jgit.dircache.DirCacheBuildIterator;
 import org.eclipse.jgit.dircache.DirCacheBuilder;
+import org.eclipse.jgit.dircache.DirCacheEntry;
+import org.eclipse.jgit.lib.CommitBuilder;
+import org.eclipse.jgit.lib.ConfigConstants;
 import org.eclipse.jgit.lib.Constants;
 import org.eclipse.jgit.lib.FileMode;
-import org.eclipse.jgit.lib.IndexDiff;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectInserter;
+import org.eclipse.jgit.lib.PersonIdent;
+import org.eclipse.jgit.lib.RefUpdate;
 import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.lib.StoredConfig;
+import org.eclipse.jgit.transport.RefSpec;
 import org.eclipse.jgit.transport.URIish;
-import org.eclipse.jgit.treewalk.FileTreeIterator;
-import org.eclipse.jgit.treewalk.TreeWalk;
-import org.eclipse.jgit.treewalk.filter.TreeFilter;
 import org.jenkinsci.plugins.gitclient.Git;
 import org.jenkinsci.plugins.gitclient.GitClient;
+import org.jenkinsci.plugins.gitclient.JGitAPIImpl;
+import org.jenkinsci.plugins.gitclient.JGitTool;
 import org.jenkinsci.plugins.gitclient.RepositoryCallback;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.Serializable;
 import java.net.URISyntaxException;
-import java.util.Set;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
 
 public class GitDeployCommand implements ICommand<GitDeployCommand.IGitDeployCommandData> {
 
     private static final String DEPLOY_REPO = ".azure-deploy";
     private static final String DEPLOY_COMMIT_MESSAGE = "Deploy ${BUILD_TAG}";
     private static final String DEPLOY_BRANCH = "master";
-    private static final String DEPLOY_REMOTE_BRANCH = "origin/" + DEPLOY_BRANCH;
+    private static final String DEPLOY_REMOTE = "origin";
+    private static final String DEPLOY_REMOTE_BRANCH = DEPLOY_REMOTE + "/" + DEPLOY_BRANCH;
+    private static final String DEPLOY_REFSPEC =
+            "+" + Constants.R_HEADS + DEPLOY_BRANCH + ":" + Constants.R_REMOTES + DEPLOY_REMOTE_BRANCH;
+
+    /**
+     * Extensions of already compressed binaries, for which delta compression costs a lot of CPU for almost nothing.
+     */
+    public static final String DEFAULT_NO_DELTA_EXTENSIONS = "jar, war, ear, zip, gz, nupkg, dll, exe, pdb, so";
+    public static final int MAX_PACK_COMPRESSION = 9;
+
+    private static final String CONFIG_PACK_SECTION = "pack";
+    private static final String CONFIG_KEY_THREADS = "threads";
+    // Read by JGit only, the git CLI ignores it
+    private static final String CONFIG_KEY_DELTA_COMPRESSION = "deltaCompression";
 
     @Override
     public void execute(final IGitDeployCommandData context) {
@@ -60,50 +96,344 @@ public class GitDeployCommand implements ICommand<GitDeployCommand.IGitDeployCom
                 context.setDeploymentState(DeploymentState.HasError);
                 return;
             }
-            final FilePath repo = ws.child(DEPLOY_REPO);
-            final String gitExe = getGitExe(run, listener);
 
-            GitClient git = Git.with(listener, env)
-                .in(repo)
-                .using(gitExe)
-                .getClient();
+            final boolean pushed = ws.act(new GitDeployCommandOnSlave(
+                    listener,
+                    env,
+                    context.isGitInProcess() ? JGitTool.MAGIC_EXENAME : getGitExe(run, listener),
+                    pubProfile.gitUrl(),
+                    new UsernamePasswordCredentialsImpl(CredentialsScope.SYSTEM, "", "",
+                            pubProfile.gitUsername(), pubProfile.gitPassword()),
+                    ws,
+                    context.getSourceDirectory(),
+                    context.getTargetDirectory(),
+                    context.getFilePath(),
+                    env.expand(DEPLOY_COMMIT_MESSAGE),
+                    getPackOptions(context),
+                    context.isGitOrphanCommit()));
+
+            if (!pushed) {
+                context.logStatus("Deploy repository is up-to-date. Nothing to commit.");
+            }
+            context.setDeploymentState(DeploymentState.Success);
+
+        } catch (IOException | InterruptedException e) {
+            e.printStackTrace();
+            context.logError("Fail to deploy using Git: " + e.getMessage());
+            context.setDeploymentState(DeploymentState.HasError);
+        }
+    }
+
+    /**
+     * Run the whole deployment on the node of the workspace, so the git and file operations don't each cost a
+     * remoting round trip.
+     */
+    private static final class GitDeployCommandOnSlave extends MasterToSlaveCallable<Boolean, IOException> {
+
+        private final TaskListener listener;
+        private final EnvVars env;
+        private final String gitExe;
+        private final String gitUrl;
+        private final StandardUsernamePasswordCredentials credentials;
+        private final FilePath workspace;
+        private final String sourceDirectory;
+        private final String targetDirectory;
+        private final String filePath;
+        private final String commitMessage;
+        private final PackOptions packOptions;
+        private final boolean orphanCommit;
+
+        private GitDeployCommandOnSlave(
+                final TaskListener listener,
+                final EnvVars env,
+                final String gitExe,
+                final String gitUrl,
+                final StandardUsernamePasswordCredentials credentials,
+                final FilePath workspace,
+                final String sourceDirectory,
+                final String targetDirectory,
+                final String filePath,
+                final String commitMessage,
+                final PackOptions packOptions,
+                final boolean orphanCommit) {
+            this.listener = listener;
+            this.env = env;
+            this.gitExe = gitExe;
+            this.gitUrl = gitUrl;
+            this.credentials = credentials;
+            this.workspace = workspace;
+            this.sourceDirectory = sourceDirectory;
+            this.targetDirectory = targetDirectory;
+            this.filePath = filePath;
+            this.commitMessage = commitMessage;
+            this.packOptions = packOptions;
+            this.orphanCommit = orphanCommit;
+        }
 
-            git.addCredentials(pubProfile.gitUrl(), new UsernamePasswordCredentialsImpl(
-                    CredentialsScope.SYSTEM, "", "", pubProfile.gitUsername(), pubProfile.gitPassword()));
+        /**
+         * @return If a deployment commit was pushed, or false if the deploy repository was already up-to-date
+         */
+        @Override
+        public Boolean call() throws IOException {
+            try {
+                final FilePath repo = workspace.child(DEPLOY_REPO);
+                // Git commands run in the repository directory, including the ls-remote before the first clone
+                repo.mkdirs();
+                final GitClient git = Git.with(listener, env)
+                    .in(repo)
+                    .using(gitExe)
+                    .getClient();
+
+                git.addCredentials(gitUrl, credentials);
+
+                // Sometimes remote repository is bare and the master branch doesn't exist
+                final boolean hasDeployBranch = hasRemoteDeployBranch(git, gitUrl);
+                if (!updateRepository(git, repo, gitUrl, hasDeployBranch, listener)) {
+                    // A repository which can't be reused has been removed
+                    repo.mkdirs();
+                    cloneRepository(git, gitUrl, hasDeployBranch);
+                }
+                git.withRepository(new ConfigurePackCallback(packOptions, git instanceof JGitAPIImpl));
 
-            git.clone_().url(pubProfile.gitUrl()).execute();
+                final FilePath sourceDir = workspace.child(Util.fixNull(sourceDirectory));
+                syncFiles(git, sourceDir, Util.fixNull(targetDirectory), filePath);
 
-            // Sometimes remote repository is bare and the master branch doesn't exist
-            Set<Branch> branches = git.getRemoteBranches();
-            for (Branch branch : branches) {
-                if (branch.getName().equals(DEPLOY_REMOTE_BRANCH)) {
-                    git.checkout().ref(DEPLOY_BRANCH).execute();
-                    break;
+                if (!isIndexChanged(git)) {
+                    return false;
                 }
+
+                if (orphanCommit) {
+                    // Replace the whole history, so the remote repository doesn't grow with each deployment
+                    git.withRepository(new OrphanCommitCallback(commitMessage));
+                    git.push().to(new URIish(gitUrl)).ref(DEPLOY_BRANCH).force().execute();
+                } else {
+                    git.commit(commitMessage);
+                    git.push().to(new URIish(gitUrl)).execute();
+                }
+                return true;
+            } catch (URISyntaxException e) {
+                throw new IOException(e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                final InterruptedIOException ex = new InterruptedIOException(e.getMessage());
+                ex.initCause(e);
+                throw ex;
             }
+        }
+    }
 
-            cleanWorkingDirectory(git);
+    private static PackOptions getPackOptions(final IGitDeployCommandData context) {
+        final String extensions = context.getGitNoDeltaExtensions();
+        return new PackOptions(
+                extensions == null ? DEFAULT_NO_DELTA_EXTENSIONS : extensions,
+                Math.min(context.getGitPackCompression(), MAX_PACK_COMPRESSION),
+                context.getGitPackThreads());
+    }
 
-            final FilePath sourceDir = ws.child(Util.fixNull(context.getSourceDirectory()));
-            final String targetDir = Util.fixNull(context.getTargetDirectory());
-            copyAndAddFiles(git, repo, sourceDir, targetDir, context.getFilePath());
+    /**
+     * Options used to pack the objects pushed to the remote repository.
+     */
+    static final class PackOptions implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private final String noDeltaExtensions;
+        private final int compression;
+        private final int threads;
+
+        /**
+         * @param noDeltaExtensions Extensions of the files pushed without delta compression, separated by commas or
+         *                          spaces
+         * @param compression Compression level, from 1 (fastest) to 9 (smallest), or 0 for git default
+         * @param threads Number of threads used to search for deltas, or 0 for git default (one per core)
+         */
+        PackOptions(final String noDeltaExtensions, final int compression, final int threads) {
+            this.noDeltaExtensions = noDeltaExtensions;
+            this.compression = compression;
+            this.threads = threads;
+        }
 
-            if (!isWorkingTreeChanged(git)) {
-                context.logStatus("Deploy repository is up-to-date. Nothing to commit.");
-                context.setDeploymentState(DeploymentState.Success);
-                return;
+        /**
+         * @return Git attributes disabling delta compression for the binary extensions
+         */
+        String getAttributes() {
+            final StringBuilder attributes = new StringBuilder();
+            for (final String extension : Util.fixNull(noDeltaExtensions).split("[,\\s]+")) {
+                final String trimmed = StringUtils.removeStart(StringUtils.removeStart(extension, "*"), ".");
+                if (!trimmed.isEmpty()) {
+                    attributes.append("*.").append(trimmed).append(" -delta\n");
+                }
             }
+            return attributes.toString();
+        }
 
-            git.commit(env.expand(DEPLOY_COMMIT_MESSAGE));
+        int getCompression() {
+            return compression;
+        }
 
-            git.push().to(new URIish(pubProfile.gitUrl())).execute();
+        int getThreads() {
+            return threads;
+        }
+    }
 
-            context.setDeploymentState(DeploymentState.Success);
+    /**
+     * Apply the pack options to the deploy repository, through its config and its info/attributes file, so they are
+     * used by the push whichever git implementation runs it.
+     *
+     * JGit doesn't read the delta attributes when packing, so with JGit the delta compression is disabled for the
+     * whole push instead, as long as there are extensions to push without it.
+     */
+    private static final class ConfigurePackCallback implements RepositoryCallback<Void> {
+        private final PackOptions options;
+        private final boolean inProcess;
+
+        /**
+         * @param options   Pack options
+         * @param inProcess If the push is run by JGit rather than the git CLI
+         */
+        private ConfigurePackCallback(final PackOptions options, final boolean inProcess) {
+            this.options = options;
+            this.inProcess = inProcess;
+        }
 
-        } catch (IOException | InterruptedException | URISyntaxException e) {
-            e.printStackTrace();
-            context.logError("Fail to deploy using Git: " + e.getMessage());
-            context.setDeploymentState(DeploymentState.HasError);
+        @Override
+        public Void invoke(final Repository repo, final VirtualChannel channel)
+                throws IOException, InterruptedException {
+            final File attributesFile = new File(repo.getDirectory(), Constants.INFO_ATTRIBUTES);
+            final String attributes = options.getAttributes();
+            if (attributes.isEmpty()) {
+                Files.deleteIfExists(attributesFile.toPath());
+            } else {
+                FileUtils.writeStringToFile(attributesFile, attributes, StandardCharsets.UTF_8);
+            }
+
+            final StoredConfig config = repo.getConfig();
+            if (options.getCompression() > 0) {
+                config.setInt(CONFIG_PACK_SECTION, null, ConfigConstants.CONFIG_KEY_COMPRESSION,
+                        options.getCompression());
+            } else {
+                config.unset(CONFIG_PACK_SECTION, null, ConfigConstants.CONFIG_KEY_COMPRESSION);
+            }
+            if (options.getThreads() > 0) {
+                config.setInt(CONFIG_PACK_SECTION, null, CONFIG_KEY_THREADS, options.getThreads());
+            } else {
+                config.unset(CONFIG_PACK_SECTION, null, CONFIG_KEY_THREADS);
+            }
+            if (inProcess && !attributes.isEmpty()) {
+                config.setBoolean(CONFIG_PACK_SECTION, null, CONFIG_KEY_DELTA_COMPRESSION, false);
+            } else {
+                config.unset(CONFIG_PACK_SECTION, null, CONFIG_KEY_DELTA_COMPRESSION);
+            }
+            config.save();
+            return null;
+        }
+    }
+
+    /**
+     * Bring the deploy repository left by a previous build up to date with the remote, so it doesn't need to be
+     * cloned again with the whole deployment history.
+     *
+     * @param git Git client
+     * @param repo Path to git repo
+     * @param gitUrl Remote URL
+     * @param hasDeployBranch If the deploy branch exists in the remote repository
+     * @param listener Task listener
+     * @return If the existing repository was updated. If not, it has been removed and needs to be cloned.
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    private static boolean updateRepository(
+            final GitClient git,
+            final FilePath repo,
+            final String gitUrl,
+            final boolean hasDeployBranch,
+            final TaskListener listener) throws IOException, InterruptedException {
+        if (!repo.child(".git").isDirectory()) {
+            return false;
+        }
+
+        try {
+            // Nothing to reuse when the remote repository has no deploy branch
+            if (hasDeployBranch && git.hasGitRepo() && gitUrl.equals(git.getRemoteUrl(DEPLOY_REMOTE))) {
+                git.fetch_()
+                        .from(new URIish(gitUrl), Collections.singletonList(new RefSpec(DEPLOY_REFSPEC)))
+                        .shallow(true)
+                        .depth(1)
+                        .execute();
+
+                if (!git.withRepository(new ResetToRemoteCallback())) {
+                    listener.getLogger().println("Deploy branch not found in existing deploy repository");
+                } else {
+                    git.clean();
+                    listener.getLogger().println("Reused existing deploy repository");
+                    return true;
+                }
+            }
+        } catch (GitException | URISyntaxException e) {
+            listener.getLogger().println("Fail to reuse existing deploy repository: " + e.getMessage());
+        }
+
+        // Missing, corrupt or pointing to another app
+        repo.deleteRecursive();
+        return false;
+    }
+
+    /**
+     * Clone the deploy repository. Only the tip of the deploy branch is needed to commit on top of, so neither the
+     * history nor the other branches are fetched.
+     *
+     * @param git Git client
+     * @param gitUrl Remote URL
+     * @param hasDeployBranch If the deploy branch exists in the remote repository
+     * @throws InterruptedException
+     */
+    private static void cloneRepository(final GitClient git, final String gitUrl, final boolean hasDeployBranch)
+            throws InterruptedException {
+        if (!hasDeployBranch) {
+            // Empty repository, there is nothing to fetch
+            git.clone_().url(gitUrl).execute();
+            return;
+        }
+
+        git.clone_()
+                .url(gitUrl)
+                .refspecs(Collections.singletonList(new RefSpec(DEPLOY_REFSPEC)))
+                .shallow(true)
+                .depth(1)
+                .execute();
+        git.checkout().ref(DEPLOY_BRANCH).execute();
+    }
+
+    private static boolean hasRemoteDeployBranch(final GitClient git, final String gitUrl)
+            throws InterruptedException {
+        final Map<String, ObjectId> refs = git.getRemoteReferences(
+                gitUrl, Constants.R_HEADS + DEPLOY_BRANCH, true, false);
+        return !refs.isEmpty();
+    }
+
+    /**
+     * Hard reset the deploy branch to the remote deploy branch, dropping any commit left by a failed deployment.
+     */
+    private static final class ResetToRemoteCallback implements RepositoryCallback<Boolean> {
+        @Override
+        public Boolean invoke(final Repository repo, final VirtualChannel channel)
+                throws IOException, InterruptedException {
+            if (repo.resolve(DEPLOY_REMOTE_BRANCH) == null) {
+                return false;
+            }
+
+            try {
+                final org.eclipse.jgit.api.Git jgit = org.eclipse.jgit.api.Git.wrap(repo);
+                jgit.checkout()
+                        .setName(DEPLOY_BRANCH)
+                        .setCreateBranch(repo.exactRef(Constants.R_HEADS + DEPLOY_BRANCH) == null)
+                        .setStartPoint(DEPLOY_REMOTE_BRANCH)
+                        .setForce(true)
+                        .call();
+                jgit.reset().setMode(ResetCommand.ResetType.HARD).setRef(DEPLOY_REMOTE_BRANCH).call();
+            } catch (GitAPIException e) {
+                throw new IOException(e);
+            }
+            return true;
         }
     }
 
@@ -127,53 +457,176 @@ public class GitDeployCommand implements ICommand<GitDeployCommand.IGitDeployCom
     }
 
     /**
-     * Remove all existing files in the working directory, from both git and disk
+     * Sync selected files into the git working directory and the index, so they contain exactly the selected files.
      *
-     * This method is modified from RmCommand in JGit.
+     * Only the files that differ from the index are copied and staged, and the files that are no longer selected are
+     * removed. Unchanged files are left untouched on disk, which makes redeploying a mostly unchanged app cheap.
      *
      * @param git Git client
+     * @param sourceDir Source directory
+     * @param targetDir Target directory
+     * @param filesPattern Files name pattern
      * @throws IOException
      * @throws InterruptedException
      */
-    private void cleanWorkingDirectory(final GitClient git) throws IOException, InterruptedException {
-        git.withRepository(new CleanWorkingDirectoryCallback());
+    private static void syncFiles(
+            final GitClient git,
+            final FilePath sourceDir,
+            final String targetDir,
+            final String filesPattern) throws IOException, InterruptedException {
+        final FilePath[] files = sourceDir.list(filesPattern);
+        final Map<String, String> sources = new TreeMap<>();
+        for (final FilePath file: files) {
+            final String fileName = FilePathUtils.trimDirectoryPrefix(sourceDir, file);
+            // Git always use Unix file path
+            sources.put(FilenameUtils.separatorsToUnix(FilenameUtils.concat(targetDir, fileName)), file.getRemote());
+        }
+        git.withRepository(new SyncFilesCallback(sources));
     }
 
-    private static final class CleanWorkingDirectoryCallback implements RepositoryCallback<Void> {
+    /**
+     * Walk the index together with the source files, in a single index update. The changed files are copied in
+     * parallel, see {@link ParallelFileCopier}.
+     *
+     * A file is considered unchanged when its size matches and either its modification time matches the one recorded
+     * in the index, or its content hash matches the staged blob. Files are copied with their modification time, so
+     * the content is only hashed once for files copied by another client, e.g. after a fresh clone.
+     *
+     * Content is staged as is, without applying any attributes or line ending conversion. Symbolic links are staged as
+     * links, with their target path as content, the same as {@code git add} does.
+     */
+    private static final class SyncFilesCallback implements RepositoryCallback<Void> {
+        private final Map<String, String> sources;
+
+        /**
+         * @param sources Absolute source path on the agent, by path in the repository
+         */
+        private SyncFilesCallback(final Map<String, String> sources) {
+            this.sources = sources;
+        }
+
         @Override
         public Void invoke(final Repository repo, final VirtualChannel channel)
                 throws IOException, InterruptedException {
-            DirCache dc = null;
-
-            try (final TreeWalk tw = new TreeWalk(repo)) {
-                dc = repo.lockDirCache();
-                DirCacheBuilder builder = dc.builder();
-                tw.reset(); // drop the first empty tree, which we do not need here
-                tw.setRecursive(true);
-                tw.setFilter(TreeFilter.ALL);
-                tw.addTree(new DirCacheBuildIterator(builder));
-
-                while (tw.next()) {
-                    final FileMode mode = tw.getFileMode(0);
-                    if (mode.getObjectType() == Constants.OBJ_BLOB) {
-                        final File path = new File(repo.getWorkTree(),
-                                tw.getPathString());
-                        // Deleting a blob is simply a matter of removing
-                        // the file or symlink named by the tree entry.
-                        delete(repo, path);
+            final Map<String, String> remaining = new TreeMap<>(sources);
+            final Map<String, File> copied = new TreeMap<>();
+            final DirCache dc = repo.lockDirCache();
+            try (ObjectInserter inserter = repo.newObjectInserter()) {
+                final DirCacheBuilder builder = dc.builder();
+                for (int i = 0; i < dc.getEntryCount(); i++) {
+                    final DirCacheEntry entry = dc.getEntry(i);
+                    final String path = entry.getPathString();
+                    final File target = new File(repo.getWorkTree(), path);
+                    final String source = remaining.remove(path);
+                    if (source == null) {
+                        delete(repo, target);
+                    } else if (isUnchanged(repo, inserter, entry, new File(source), target)) {
+                        builder.add(entry);
+                    } else {
+                        copied.put(path, new File(source));
                     }
                 }
+                for (final Map.Entry<String, String> source : remaining.entrySet()) {
+                    copied.put(source.getKey(), new File(source.getValue()));
+                }
+
+                final Map<File, File> copies = new HashMap<>();
+                for (final Map.Entry<String, File> source : copied.entrySet()) {
+                    copies.put(new File(repo.getWorkTree(), source.getKey()), source.getValue());
+                }
+                new ParallelFileCopier().copy(copies);
+
+                // Stage in path order, so the result doesn't depend on the order the copies completed
+                for (final String path : copied.keySet()) {
+                    builder.add(stage(repo, inserter, path, new File(repo.getWorkTree(), path)));
+                }
+                inserter.flush();
                 builder.commit();
             } finally {
-                if (dc != null) {
-                    dc.unlock();
-                }
+                dc.unlock();
             }
-
             return null;
         }
 
-        private void delete(final Repository repo, final File target) {
+        private static boolean isUnchanged(
+                final Repository repo,
+                final ObjectInserter inserter,
+                final DirCacheEntry entry,
+                final File source,
+                final File target) throws IOException {
+            if (Files.isSymbolicLink(source.toPath())) {
+                return entry.getFileMode() == FileMode.SYMLINK && Files.isSymbolicLink(target.toPath())
+                        && Files.readSymbolicLink(source.toPath()).equals(Files.readSymbolicLink(target.toPath()));
+            }
+
+            final long length = source.length();
+            if (!target.isFile() || entry.getLength() != length || target.length() != length
+                    || entry.getFileMode() != getFileMode(repo, source)) {
+                return false;
+            }
+
+            final long lastModified = source.lastModified();
+            if (entry.getLastModified() == lastModified && target.lastModified() == lastModified) {
+                return true;
+            }
+
+            final ObjectId id;
+            try (InputStream stream = new FileInputStream(source)) {
+                id = inserter.idFor(Constants.OBJ_BLOB, length, stream);
+            }
+            if (!id.equals(entry.getObjectId())) {
+                return false;
+            }
+
+            // Same content, record the modification time so it isn't hashed again on the next deployment
+            if (target.setLastModified(lastModified)) {
+                entry.setLastModified(target.lastModified());
+            }
+            return true;
+        }
+
+        private static DirCacheEntry stage(
+                final Repository repo,
+                final ObjectInserter inserter,
+                final String path,
+                final File target) throws IOException {
+            final DirCacheEntry entry = new DirCacheEntry(path);
+            if (Files.isSymbolicLink(target.toPath())) {
+                // Git always use Unix file path
+                final byte[] link = Constants.encode(
+                        FilenameUtils.separatorsToUnix(Files.readSymbolicLink(target.toPath()).toString()));
+                entry.setFileMode(FileMode.SYMLINK);
+                entry.setLength(link.length);
+                entry.setLastModified(
+                        Files.getLastModifiedTime(target.toPath(), LinkOption.NOFOLLOW_LINKS).toMillis());
+                entry.setObjectId(inserter.insert(Constants.OBJ_BLOB, link));
+                return entry;
+            }
+
+            final long length = target.length();
+            final ObjectId id;
+            try (InputStream stream = new FileInputStream(target)) {
+                id = inserter.insert(Constants.OBJ_BLOB, length, stream);
+            }
+
+            entry.setFileMode(getFileMode(repo, target));
+            entry.setLength(length);
+            entry.setLastModified(target.lastModified());
+            entry.setObjectId(id);
+            return entry;
+        }
+
+        private static FileMode getFileMode(final Repository repo, final File file) {
+            return repo.getFS().supportsExecute() && repo.getFS().canExecute(file)
+                    ? FileMode.EXECUTABLE_FILE : FileMode.REGULAR_FILE;
+        }
+
+        /**
+         * Delete a file and its parent directories left empty.
+         *
+         * This method is modified from RmCommand in JGit.
+         */
+        private static void delete(final Repository repo, final File target) {
             File cur = target;
             while (cur != null && !cur.equals(repo.getWorkTree()) && cur.delete()) {
                 cur = cur.getParentFile();
@@ -182,53 +635,79 @@ public class GitDeployCommand implements ICommand<GitDeployCommand.IGitDeployCom
     }
 
     /**
-     * Copy selected files to git working directory and stage them.
-     *
-     * @param git Git client
-     * @param repo Path to git repo
-     * @param sourceDir Source directory
-     * @param targetDir Target directory
-     * @param filesPattern Files name pattern
-     * @throws IOException
-     * @throws InterruptedException
+     * Commit the index as a commit without any parent, and point the deploy branch to it.
      */
-    private void copyAndAddFiles(
-            final GitClient git,
-            final FilePath repo,
-            final FilePath sourceDir,
-            final String targetDir,
-            final String filesPattern) throws IOException, InterruptedException {
-        final FilePath[] files = sourceDir.list(filesPattern);
-        for (final FilePath file: files) {
-            final String fileName = FilePathUtils.trimDirectoryPrefix(sourceDir, file);
-            FilePath repoPath = new FilePath(repo.child(targetDir), fileName);
-            file.copyTo(repoPath);
+    private static final class OrphanCommitCallback implements RepositoryCallback<ObjectId> {
+        private final String message;
 
-            // Git always use Unix file path
-            String filePathInGit = FilenameUtils.separatorsToUnix(FilenameUtils.concat(targetDir, fileName));
-            git.add(filePathInGit);
+        private OrphanCommitCallback(final String message) {
+            this.message = message;
+        }
+
+        @Override
+        public ObjectId invoke(final Repository repo, final VirtualChannel channel)
+                throws IOException, InterruptedException {
+            final ObjectId commitId;
+            try (ObjectInserter inserter = repo.newObjectInserter()) {
+                final PersonIdent ident = new PersonIdent(repo);
+                final CommitBuilder commit = new CommitBuilder();
+                commit.setTreeId(repo.readDirCache().writeTree(inserter));
+                commit.setAuthor(ident);
+                commit.setCommitter(ident);
+                commit.setMessage(message);
+                commitId = inserter.insert(commit);
+                inserter.flush();
+            }
+
+            // HEAD is a symbolic reference to the deploy branch, which is updated even if it doesn't exist yet
+            final RefUpdate update = repo.updateRef(Constants.HEAD);
+            update.setNewObjectId(commitId);
+            update.setRefLogMessage("commit (orphan): " + message, false);
+            final RefUpdate.Result result = update.forceUpdate();
+            switch (result) {
+                case NEW:
+                case FORCED:
+                case FAST_FORWARD:
+                case NO_CHANGE:
+                    return commitId;
+                default:
+                    throw new IOException("Fail to update " + DEPLOY_BRANCH + " branch: " + result);
+            }
         }
     }
 
     /**
-     * Check if working tree changed.
+     * Check if the index differs from the last commit.
+     *
+     * All the deployed files are staged through the index, see {@link #syncFiles}, so comparing the tree of the
+     * index with the tree of HEAD is enough, without scanning and hashing the working tree again.
      *
      * @param git Git client
-     * @return If working tree changed
+     * @return If the index changed
      * @throws IOException
      * @throws InterruptedException
      */
-    private boolean isWorkingTreeChanged(final GitClient git) throws IOException, InterruptedException {
-        return git.withRepository(new IsWorkingTreeChangedCallback());
+    private static boolean isIndexChanged(final GitClient git) throws IOException, InterruptedException {
+        return git.withRepository(new IsIndexChangedCallback());
     }
 
-    private static final class IsWorkingTreeChangedCallback implements RepositoryCallback<Boolean> {
+    private static final class IsIndexChangedCallback implements RepositoryCallback<Boolean> {
         @Override
         public Boolean invoke(final Repository repo, final VirtualChannel channel)
                 throws IOException, InterruptedException {
-            FileTreeIterator workingTreeIt = new FileTreeIterator(repo);
-            IndexDiff diff = new IndexDiff(repo, Constants.HEAD, workingTreeIt);
-            return diff.diff();
+            final DirCache dc = repo.readDirCache();
+            final ObjectId headTree = repo.resolve(Constants.HEAD + "^{tree}");
+            if (headTree == null) {
+                // Nothing committed yet
+                return dc.getEntryCount() > 0;
+            }
+
+            // The trees are needed by the commit anyway
+            try (ObjectInserter inserter = repo.newObjectInserter()) {
+                final ObjectId indexTree = dc.writeTree(inserter);
+                inserter.flush();
+                return !indexTree.equals(headTree);
+            }
         }
     }
 
@@ -241,5 +720,15 @@ public class GitDeployCommand implements ICommand<GitDeployCommand.IGitDeployCom
         String getSourceDirectory();
 
         String getTargetDirectory();
+
+        String getGitNoDeltaExtensions();
+
+        int getGitPackCompression();
+
+        int getGitPackThreads();
+
+        boolean isGitOrphanCommit();
+
+        boolean isGitInProcess();
     }
 }
@@ -0,0 +1,65 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License. See License.txt in the project root for
+ * license information.
+ */
+package com.microsoft.jenkins.appservice.commands;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+
+/**
+ * Copies local files with a bounded number of threads, so copying many small files isn't bound by the latency of
+ * each file operation, e.g. on network attached disks.
+ *
+ * Files are copied with their attributes, including the modification time. Symbolic links are copied as links, not
+ * as the files they point to.
+ */
+final class ParallelFileCopier {
+
+    private static final int THREADS_PER_CORE = 2;
+    private static final int MAX_DEFAULT_THREADS = 16;
+
+    /**
+     * Number of copy threads, configurable on the agent running the deployment.
+     */
+    static final int THREADS = Integer.getInteger(ParallelFileCopier.class.getName() + ".threads",
+            Math.min(Runtime.getRuntime().availableProcessors() * THREADS_PER_CORE, MAX_DEFAULT_THREADS));
+
+    private final int threads;
+
+    ParallelFileCopier() {
+        this(THREADS);
+    }
+
+    ParallelFileCopier(final int threads) {
+        this.threads = Math.max(1, threads);
+    }
+
+    /**
+     * Copy files, creating the missing parent directories and replacing existing files.
+     *
+     * @param copies Source file by target file
+     * @throws IOException If any copy failed. The copies still queued are cancelled.
+     * @throws InterruptedException
+     */
+    void copy(final Map<File, File> copies) throws IOException, InterruptedException {
+        BoundedParallelExecutor.forEach(copies.entrySet(), threads, "azure-file-copy-%d", IOException.class,
+                new BoundedParallelExecutor.Task<Map.Entry<File, File>, IOException>() {
+                    @Override
+                    public void run(final int worker, final Map.Entry<File, File> copy) throws IOException {
+                        copy(copy.getValue(), copy.getKey());
+                    }
+                });
+    }
+
+    private static void copy(final File source, final File target) throws IOException {
+        Files.createDirectories(target.getParentFile().toPath());
+        Files.copy(source.toPath(), target.toPath(),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.COPY_ATTRIBUTES, LinkOption.NOFOLLOW_LINKS);
+    }
+}
@@ -0,0 +1,289 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License. See License.txt in the project root for
+ * license information.
+ */
+package com.microsoft.jenkins.appservice.commands;
+
+import com.microsoft.azure.management.appservice.PublishingProfile;
+import com.microsoft.jenkins.appservice.util.FilePathUtils;
+import com.microsoft.jenkins.exceptions.AzureCloudException;
+import hudson.FilePath;
+import hudson.Util;
+import hudson.model.TaskListener;
+import jenkins.security.MasterToSlaveCallable;
+import org.apache.commons.codec.binary.Base64;
+import org.apache.commons.io.FilenameUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.CountingOutputStream;
+import org.apache.commons.lang.StringUtils;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Deploy files by streaming them as a single zip archive to the Kudu zip API of the app, which extracts it into the
+ * target directory. This avoids the per-file protocol overhead of FTP when deploying many small files.
+ */
+public class ZipDeployCommand implements ICommand<ZipDeployCommand.IZipDeployCommandData> {
+
+    private static final String SITE_ROOT = "site/wwwroot/";
+
+    // Java specific
+    private static final String TOMCAT_ROOT_WAR = "webapps/ROOT.war";
+    private static final String TOMCAT_ROOT_DIR = "webapps/ROOT/";
+
+    private static final int CHUNK_SIZE = 64 * 1024;
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int CONNECT_TIMEOUT = 60 * 1000;
+    private static final int READ_TIMEOUT = 10 * 60 * 1000;
+    private static final int MAX_ERROR_LENGTH = 4 * 1024;
+
+    @Override
+    public void execute(final IZipDeployCommandData context) {
+        final FilePath workspace = context.getWorkspace();
+        final PublishingProfile pubProfile = context.getPublishingProfile();
+
+        if (workspace == null) {
+            context.logError("Workspace is null");
+            context.setDeploymentState(DeploymentState.HasError);
+            return;
+        }
+
+        try {
+            workspace.act(new ZipDeployCommandOnSlave(
+                    context.getListener(),
+                    getKuduUrl(pubProfile.gitUrl()),
+                    pubProfile.gitUsername(),
+                    pubProfile.gitPassword(),
+                    workspace,
+                    context.getSourceDirectory(),
+                    context.getTargetDirectory(),
+                    context.getFilePath()
+            ));
+            context.setDeploymentState(DeploymentState.Success);
+        } catch (IOException | AzureCloudException e) {
+            context.logError("Fail to deploy zip archive: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Get the base URL of the Kudu site from the Git URL in publishing profile, for example
+     * {@code https://app.scm.azurewebsites.net:443/app.git}.
+     *
+     * @param gitUrl Git URL
+     * @return Base URL of Kudu site, for example {@code https://app.scm.azurewebsites.net:443}
+     */
+    static String getKuduUrl(final String gitUrl) {
+        String host = gitUrl;
+        if (host.contains("://")) {
+            host = host.substring(host.indexOf("://") + "://".length());
+        }
+        if (host.indexOf("/") > 0) {
+            host = host.substring(0, host.indexOf("/"));
+        }
+        return "https://" + host;
+    }
+
+    private static final class ZipDeployCommandOnSlave extends MasterToSlaveCallable<Void, AzureCloudException> {
+
+        private final TaskListener listener;
+        private final String kuduUrl;
+        private final String userName;
+        private final String password;
+        private final FilePath workspace;
+        private final String sourceDirectory;
+        private final String targetDirectory;
+        private final String filePath;
+
+        private ZipDeployCommandOnSlave(
+                final TaskListener listener,
+                final String kuduUrl,
+                final String userName,
+                final String password,
+                final FilePath workspace,
+                final String sourceDirectory,
+                final String targetDirectory,
+                final String filePath) {
+            this.listener = listener;
+            this.kuduUrl = kuduUrl;
+            this.userName = userName;
+            this.password = password;
+            this.workspace = workspace;
+            this.sourceDirectory = sourceDirectory;
+            this.targetDirectory = targetDirectory;
+            this.filePath = filePath;
+        }
+
+        @Override
+        public Void call() throws AzureCloudException {
+            try {
+                final FilePath sourceDir = workspace.child(Util.fixNull(sourceDirectory));
+                final FilePath[] files = sourceDir.list(filePath);
+                if (files.length == 0) {
+                    listener.getLogger().println("No file found. Skip deployment.");
+                    return null;
+                }
+
+                new ZipUploader(kuduUrl, userName, password, listener.getLogger())
+                        .upload(sourceDir, files, Util.fixNull(targetDirectory));
+            } catch (IOException | InterruptedException | URISyntaxException e) {
+                throw new AzureCloudException(e);
+            }
+            return null;
+        }
+    }
+
+    static final class ZipUploader {
+
+        private final String kuduUrl;
+        private final String authorization;
+        private final PrintStream logger;
+
+        ZipUploader(final String kuduUrl, final String userName, final String password, final PrintStream logger) {
+            this.kuduUrl = kuduUrl;
+            this.authorization = "Basic " + Base64.encodeBase64String(
+                    (userName + ":" + password).getBytes(Charset.forName("UTF-8")));
+            this.logger = logger;
+        }
+
+        /**
+         * Stream the files as a zip archive to the zip API. The archive is written directly to the request body and
+         * is never buffered as a whole, neither in memory nor on disk.
+         *
+         * @param sourceDir Source directory, file names in the archive are relative to it
+         * @param files Files to upload
+         * @param targetDirectory Target directory relative to site root
+         */
+        void upload(final FilePath sourceDir, final FilePath[] files, final String targetDirectory)
+                throws IOException, InterruptedException, URISyntaxException, AzureCloudException {
+            final String targetPath = getTargetPath(targetDirectory);
+
+            // Deployment to tomcat root requires removing root directory first
+            for (final FilePath file : files) {
+                final String name = targetPath + getEntryName(sourceDir, file);
+                if (name.equalsIgnoreCase(SITE_ROOT + TOMCAT_ROOT_WAR)) {
+                    removeDirectory(SITE_ROOT + TOMCAT_ROOT_DIR);
+                    break;
+                }
+            }
+
+            final URL url = getUrl("/api/zip/" + targetPath, null);
+            logger.println(String.format("Uploading %d file(s) as zip archive to %s", files.length, url));
+
+            final long start = System.currentTimeMillis();
+            final HttpURLConnection connection = openConnection(url, "PUT");
+            try {
+                connection.setDoOutput(true);
+                connection.setChunkedStreamingMode(CHUNK_SIZE);
+                connection.setRequestProperty("Content-Type", "application/zip");
+
+                final CountingOutputStream counter = new CountingOutputStream(connection.getOutputStream());
+                try (ZipOutputStream zip = new ZipOutputStream(new BufferedOutputStream(counter, BUFFER_SIZE))) {
+                    for (final FilePath file : files) {
+                        zip.putNextEntry(new ZipEntry(getEntryName(sourceDir, file)));
+                        try (InputStream stream = file.read()) {
+                            IOUtils.copy(stream, zip);
+                        }
+                        zip.closeEntry();
+                    }
+                }
+
+                final int responseCode = connection.getResponseCode();
+                if (!isSuccessful(responseCode)) {
+                    throw new AzureCloudException("Fail to upload zip archive, " + getError(connection));
+                }
+
+                logger.println(String.format("Uploaded zip archive of %d bytes in %d ms",
+                        counter.getByteCount(), System.currentTimeMillis() - start));
+            } finally {
+                connection.disconnect();
+            }
+        }
+
+        private void removeDirectory(final String path)
+                throws IOException, URISyntaxException, AzureCloudException {
+            logger.println("Removing remote directory: " + path);
+
+            final HttpURLConnection connection = openConnection(getUrl("/api/vfs/" + path, "recursive=true"),
+                    "DELETE");
+            try {
+                connection.setRequestProperty("If-Match", "*");
+                final int responseCode = connection.getResponseCode();
+                if (!isSuccessful(responseCode) && responseCode != HttpURLConnection.HTTP_NOT_FOUND) {
+                    throw new AzureCloudException(String.format("Fail to remove directory %s, %s",
+                            path, getError(connection)));
+                }
+            } finally {
+                connection.disconnect();
+            }
+        }
+
+        /**
+         * Read the error response, which Kudu uses to tell why a request failed.
+         *
+         * @param connection Connection with an unsuccessful response
+         * @return Status code with the response body, or the status message if the body is empty
+         */
+        private static String getError(final HttpURLConnection connection) throws IOException {
+            String body = null;
+            try (InputStream stream = connection.getErrorStream()) {
+                if (stream != null) {
+                    body = IOUtils.toString(stream, Charset.forName("UTF-8")).trim();
+                }
+            }
+            return String.format("HTTP %d: %s", connection.getResponseCode(), StringUtils.isEmpty(body)
+                    ? connection.getResponseMessage() : StringUtils.abbreviate(body, MAX_ERROR_LENGTH));
+        }
+
+        private HttpURLConnection openConnection(final URL url, final String method) throws IOException {
+            final HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+            connection.setRequestMethod(method);
+            connection.setConnectTimeout(CONNECT_TIMEOUT);
+            connection.setReadTimeout(READ_TIMEOUT);
+            connection.setRequestProperty("Authorization", authorization);
+            return connection;
+        }
+
+        private URL getUrl(final String path, final String query) throws URISyntaxException, IOException {
+            final URI base = new URI(kuduUrl);
+            return new URI(base.getScheme(), null, base.getHost(), base.getPort(), path, query, null).toURL();
+        }
+
+        private static boolean isSuccessful(final int responseCode) {
+            return responseCode >= HttpURLConnection.HTTP_OK && responseCode < HttpURLConnection.HTTP_MULT_CHOICE;
+        }
+
+        private static String getTargetPath(final String targetDirectory) {
+            final String dir = FilenameUtils.separatorsToUnix(FilenameUtils.normalizeNoEndSeparator(
+                    SITE_ROOT + targetDirectory, true));
+            return dir + "/";
+        }
+
+        private static String getEntryName(final FilePath sourceDir, final FilePath file) {
+            return FilenameUtils.separatorsToUnix(FilePathUtils.trimDirectoryPrefix(sourceDir, file));
+        }
+    }
+
+    public interface IZipDeployCommandData extends IBaseCommandData {
+
+        PublishingProfile getPublishingProfile();
+
+        String getFilePath();
+
+        String getSourceDirectory();
+
+        String getTargetDirectory();
+    }
+}
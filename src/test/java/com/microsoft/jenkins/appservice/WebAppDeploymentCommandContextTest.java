@@ -87,6 +87,16 @@ public class WebAppDeploymentCommandContextTest {
         Assert.assertEquals(1, commands.size());
         Assert.assertEquals(ctx.getStartCommandClass().getName(), FTPDeployCommand.class.getName());
 
+        // Java Application with zip deploy
+        ctx.setZipDeploy(true);
+        ctx.configure(run, workspace, listener, app);
+        commands = ctx.getCommands();
+        Assert.assertFalse(commands.containsKey(FTPDeployCommand.class));
+        Assert.assertTrue(commands.containsKey(ZipDeployCommand.class));
+        Assert.assertEquals(1, commands.size());
+        Assert.assertEquals(ctx.getStartCommandClass().getName(), ZipDeployCommand.class.getName());
+        ctx.setZipDeploy(false);
+
         // Docker
         ctx.setPublishType(WebAppDeploymentCommandContext.PUBLISH_TYPE_DOCKER);
         ctx.configure(run, workspace, listener, app);
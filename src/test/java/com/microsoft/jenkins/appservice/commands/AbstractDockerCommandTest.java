@@ -2,6 +2,17 @@ package com.microsoft.jenkins.appservice.commands;
 
 import com.github.dockerjava.api.DockerClient;
 import com.github.dockerjava.api.model.AuthConfig;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.commons.codec.binary.Base64;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
 
 /**
  * Created by juniwang on 27/06/2017.
@@ -20,6 +31,87 @@ public class AbstractDockerCommandTest {
         public DockerClient build(AuthConfig authConfig) {
             return dockerClient;
         }
+
+        @Override
+        public void release(DockerClient dockerClient) {
+        }
+    }
+
+    /**
+     * Stand-in of a Docker registry serving manifest digests, behind bearer token or basic authentication.
+     */
+    protected static final class MockDockerRegistry implements Closeable {
+        private static final String TOKEN = "t0k3n";
+
+        private final HttpServer server;
+        private final String authorization;
+        private final boolean tokenAuth;
+        private final Map<String, String> digests = new HashMap<>();
+
+        public MockDockerRegistry(String username, String password, boolean tokenAuth) throws IOException {
+            this.authorization = "Basic " + Base64.encodeBase64String(
+                    (username + ":" + password).getBytes(StandardCharsets.UTF_8));
+            this.tokenAuth = tokenAuth;
+            this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+            server.createContext("/token", new HttpHandler() {
+                @Override
+                public void handle(HttpExchange exchange) throws IOException {
+                    if (!authorization.equals(exchange.getRequestHeaders().getFirst("Authorization"))
+                            || !exchange.getRequestURI().getQuery().contains("scope=repository")) {
+                        respond(exchange, 401, null);
+                        return;
+                    }
+                    respond(exchange, 200, "{\"token\": \"" + TOKEN + "\"}");
+                }
+            });
+            server.createContext("/v2/", new HttpHandler() {
+                @Override
+                public void handle(HttpExchange exchange) throws IOException {
+                    String expected = MockDockerRegistry.this.tokenAuth ? "Bearer " + TOKEN : authorization;
+                    if (!expected.equals(exchange.getRequestHeaders().getFirst("Authorization"))) {
+                        exchange.getResponseHeaders().add("WWW-Authenticate", MockDockerRegistry.this.tokenAuth
+                                ? "Bearer realm=\"" + getUrl() + "/token\",service=\"mock-registry\""
+                                : "Basic realm=\"mock-registry\"");
+                        respond(exchange, 401, null);
+                        return;
+                    }
+                    String path = exchange.getRequestURI().getPath().substring("/v2/".length());
+                    String digest = digests.get(path.replace("/manifests/", ":"));
+                    if (digest == null) {
+                        respond(exchange, 404, null);
+                        return;
+                    }
+                    exchange.getResponseHeaders().add("Docker-Content-Digest", digest);
+                    respond(exchange, 200, null);
+                }
+            });
+            server.start();
+        }
+
+        public MockDockerRegistry withManifest(String repository, String tag, String digest) {
+            digests.put(repository + ":" + tag, digest);
+            return this;
+        }
+
+        public String getUrl() {
+            return "http://127.0.0.1:" + server.getAddress().getPort();
+        }
+
+        private static void respond(HttpExchange exchange, int code, String body) throws IOException {
+            if (body == null) {
+                exchange.sendResponseHeaders(code, -1);
+            } else {
+                byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+                exchange.sendResponseHeaders(code, bytes.length);
+                exchange.getResponseBody().write(bytes);
+            }
+            exchange.close();
+        }
+
+        @Override
+        public void close() {
+            server.stop(0);
+        }
     }
 
     protected AuthConfig defaultExampleAuthConfig() {
@@ -0,0 +1,89 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License. See License.txt in the project root for
+ * license information.
+ */
+package com.microsoft.jenkins.appservice.commands;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class BoundedParallelExecutorTest {
+
+    private static List<Integer> items(int count) {
+        List<Integer> items = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            items.add(i);
+        }
+        return items;
+    }
+
+    @Test
+    public void runEveryItem() throws Exception {
+        final Set<Integer> done = Collections.newSetFromMap(new ConcurrentHashMap<Integer, Boolean>());
+        final Set<Integer> workers = Collections.newSetFromMap(new ConcurrentHashMap<Integer, Boolean>());
+
+        BoundedParallelExecutor.forEach(items(100), 4, "test-%d", IOException.class,
+                new BoundedParallelExecutor.Task<Integer, IOException>() {
+                    @Override
+                    public void run(int worker, Integer item) throws InterruptedException {
+                        workers.add(worker);
+                        done.add(item);
+                        Thread.sleep(1);
+                    }
+                });
+
+        Assert.assertEquals(100, done.size());
+        for (int worker : workers) {
+            Assert.assertTrue(worker >= 0 && worker < 4);
+        }
+    }
+
+    @Test
+    public void runSingleWorkerOnCallingThread() throws Exception {
+        final Thread caller = Thread.currentThread();
+        final List<Integer> done = new ArrayList<>();
+
+        BoundedParallelExecutor.forEach(items(3), 1, "test-%d", IOException.class,
+                new BoundedParallelExecutor.Task<Integer, IOException>() {
+                    @Override
+                    public void run(int worker, Integer item) {
+                        Assert.assertEquals(0, worker);
+                        Assert.assertSame(caller, Thread.currentThread());
+                        done.add(item);
+                    }
+                });
+
+        Assert.assertEquals(items(3), done);
+    }
+
+    @Test
+    public void stopOnFirstFailure() throws Exception {
+        final AtomicInteger started = new AtomicInteger();
+        try {
+            BoundedParallelExecutor.forEach(items(100), 2, "test-%d", IOException.class,
+                    new BoundedParallelExecutor.Task<Integer, IOException>() {
+                        @Override
+                        public void run(int worker, Integer item) throws IOException, InterruptedException {
+                            started.incrementAndGet();
+                            if (item == 0) {
+                                throw new IOException("item " + item);
+                            }
+                            Thread.sleep(10);
+                        }
+                    });
+            Assert.fail("Should rethrow the failure of the task");
+        } catch (IOException e) {
+            Assert.assertEquals("item 0", e.getMessage());
+        }
+        Assert.assertTrue(started.get() < 100);
+    }
+}
@@ -7,6 +7,7 @@
 package com.microsoft.jenkins.appservice.commands;
 
 import com.github.dockerjava.api.DockerClient;
+import com.github.dockerjava.api.model.AuthConfig;
 import org.junit.Assert;
 import org.junit.Test;
 
@@ -17,6 +18,23 @@ public class DefaultDockerClientBuilderTest extends AbstractDockerCommandTest {
         DockerClientBuilder builder = new DefaultDockerClientBuilder();
         DockerClient dockerClient = builder.build(defaultExampleAuthConfig());
         Assert.assertEquals(defaultExampleAuthConfig(), dockerClient.authConfig());
+        builder.release(dockerClient);
+    }
+
+    @Test
+    public void reuseClient() {
+        DockerClientBuilder builder = new DefaultDockerClientBuilder();
+        DockerClient dockerClient = builder.build(defaultExampleAuthConfig());
+        Assert.assertSame(dockerClient, new DefaultDockerClientBuilder().build(defaultExampleAuthConfig()));
+
+        AuthConfig otherAuthConfig = defaultExampleAuthConfig().withUsername("otherUser");
+        DockerClient otherClient = builder.build(otherAuthConfig);
+        Assert.assertNotSame(dockerClient, otherClient);
+        Assert.assertEquals(otherAuthConfig, otherClient.authConfig());
+
+        builder.release(dockerClient);
+        builder.release(dockerClient);
+        builder.release(otherClient);
     }
 
 }
@@ -0,0 +1,65 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License. See License.txt in the project root for
+ * license information.
+ */
+package com.microsoft.jenkins.appservice.commands;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+
+public class DockerBuildCacheReportTest {
+
+    @Test
+    public void report() throws Exception {
+        DockerBuildCacheReport report = new DockerBuildCacheReport();
+        report.onStream("Step 1/4 : FROM openjdk:8\n");
+        report.onStream(" ---> 1b2c3d4e5f60\n");
+        report.onStream("Step 2/4 : COPY lib /app/lib\n ---> Using cache\n ---> 2b2c3d4e5f60\n");
+        report.onStream("Step 3/4 : COPY app.jar /app\n");
+        report.onStream(" ---> Running in 3b2c3d4e5f60\n");
+        report.onStream(" ---> 4b2c3d4e5f60\n");
+        report.onStream(null);
+        report.onStream("Step 4/4 : CMD java -jar /app/app.jar\n ---> Running in 5b2c3d4e5f60\n");
+
+        Assert.assertEquals(1, report.getHits());
+        Assert.assertEquals(2, report.getMisses());
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        report.print(new PrintStream(out, true, "UTF-8"));
+        String[] lines = out.toString("UTF-8").split("\\r?\\n");
+        Assert.assertEquals(4, lines.length);
+        Assert.assertEquals("Docker layer cache: 1 hit(s), 2 miss(es)", lines[0]);
+        Assert.assertEquals("  [hit] Step 2/4 : COPY lib /app/lib", lines[1]);
+        Assert.assertEquals("  [miss] Step 3/4 : COPY app.jar /app", lines[2]);
+        Assert.assertEquals("  [miss] Step 4/4 : CMD java -jar /app/app.jar", lines[3]);
+    }
+
+    @Test
+    public void reportMissWithoutContainer() throws Exception {
+        DockerBuildCacheReport report = new DockerBuildCacheReport();
+        report.onStream("Step 1/5 : FROM openjdk:8 AS build\n ---> 1b2c3d4e5f60\n");
+        report.onStream("Step 2/5 : ENV APP_HOME /app\n ---> Using cache\n ---> 2b2c3d4e5f60\n");
+        // COPY and ADD don't run a container, even when they miss the cache
+        report.onStream("Step 3/5 : COPY app.jar /app\n ---> 3b2c3d4e5f60\n");
+        report.onStream("Step 4/5 : RUN chmod +x /app/app.jar\n ---> Running in 4b2c3d4e5f60\n");
+        report.onStream("Removing intermediate container 4b2c3d4e5f60\n ---> 5b2c3d4e5f60\n");
+        report.onStream("Step 5/5 : from scratch\n ---> 6b2c3d4e5f60\n");
+
+        Assert.assertEquals(1, report.getHits());
+        Assert.assertEquals(2, report.getMisses());
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        report.print(new PrintStream(out, true, "UTF-8"));
+        String[] lines = out.toString("UTF-8").split("\\r?\\n");
+        Assert.assertArrayEquals(new String[]{
+                "Docker layer cache: 1 hit(s), 2 miss(es)",
+                "  [hit] Step 2/5 : ENV APP_HOME /app",
+                "  [miss] Step 3/5 : COPY app.jar /app",
+                "  [miss] Step 4/5 : RUN chmod +x /app/app.jar",
+        }, lines);
+    }
+}
@@ -7,20 +7,31 @@ package com.microsoft.jenkins.appservice.commands;
 
 import com.github.dockerjava.api.DockerClient;
 import com.github.dockerjava.api.command.BuildImageCmd;
+import com.github.dockerjava.api.command.PullImageCmd;
+import com.github.dockerjava.api.model.AuthConfig;
 import com.github.dockerjava.core.command.BuildImageResultCallback;
+import com.github.dockerjava.core.command.PullImageResultCallback;
 import com.google.common.io.Files;
 import hudson.FilePath;
 import hudson.model.Run;
 import hudson.model.TaskListener;
 import hudson.util.StreamTaskListener;
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
 import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 
 import java.io.File;
+import java.io.InputStream;
 import java.nio.charset.Charset;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Set;
 
@@ -94,8 +105,21 @@ public class DockerBuildCommandTest extends AbstractDockerCommandTest {
         when(commandData.getDockerBuildInfo()).thenReturn(defaultExampleBuildInfo());
         createTestDockerfile(1);
 
-        BuildImageCmd buildImageCmd = mock(BuildImageCmd.class);
-        when(dockerClient.buildImageCmd(any(File.class))).thenReturn(buildImageCmd);
+        final BuildImageCmd buildImageCmd = mock(BuildImageCmd.class);
+        final List<String> contextEntries = new ArrayList<>();
+        when(dockerClient.buildImageCmd(any(InputStream.class))).thenAnswer(new Answer<BuildImageCmd>() {
+            @Override
+            public BuildImageCmd answer(InvocationOnMock invocation) throws Throwable {
+                // Read the build context like the daemon does
+                TarArchiveInputStream tar = new TarArchiveInputStream((InputStream) invocation.getArguments()[0]);
+                TarArchiveEntry entry;
+                while ((entry = tar.getNextTarEntry()) != null) {
+                    contextEntries.add(entry.getName());
+                }
+                IOUtils.toByteArray(tar);
+                return buildImageCmd;
+            }
+        });
         when(buildImageCmd.withTags(any(Set.class))).thenReturn(buildImageCmd);
         BuildImageResultCallback callback = mock(BuildImageResultCallback.class);
         when(buildImageCmd.exec(any(BuildImageResultCallback.class))).thenReturn(callback);
@@ -103,9 +127,53 @@ public class DockerBuildCommandTest extends AbstractDockerCommandTest {
 
         command.execute(commandData);
 
-        verify(dockerClient, times(1)).buildImageCmd(any(File.class));
+        verify(dockerClient, times(1)).buildImageCmd(any(InputStream.class));
+        Assert.assertEquals(Collections.singletonList("Dockerfile"), contextEntries);
         verify(buildImageCmd, times(1)).withTags(any(Set.class));
         verify(buildImageCmd, times(1)).exec(any(BuildImageResultCallback.class));
         verify(callback, times(1)).awaitCompletion();
     }
+
+    @Test
+    public void dockerBuildCmdWithCacheFromLiveImageTest() throws Exception {
+        buildWithCacheFromLiveImage("DOCKER|foo/bar:tag", "foo/bar", "tag");
+    }
+
+    @Test
+    public void dockerBuildCmdWithCacheFromLiveImageKeepsTagCase() throws Exception {
+        buildWithCacheFromLiveImage("DOCKER|Foo/Bar:Release-1", "foo/bar", "Release-1");
+    }
+
+    private void buildWithCacheFromLiveImage(String linuxFxVersion, String repository, String tag)
+            throws Exception {
+        when(commandData.getDockerBuildInfo()).thenReturn(defaultExampleBuildInfo()
+                .withLinuxFxVersion(linuxFxVersion)
+                .withCacheFromLiveImage(true));
+        createTestDockerfile(1);
+
+        PullImageCmd pullImageCmd = mock(PullImageCmd.class);
+        when(dockerClient.pullImageCmd(repository)).thenReturn(pullImageCmd);
+        when(pullImageCmd.withTag(tag)).thenReturn(pullImageCmd);
+        when(pullImageCmd.withAuthConfig(any(AuthConfig.class))).thenReturn(pullImageCmd);
+        PullImageResultCallback pullCallback = mock(PullImageResultCallback.class);
+        when(pullImageCmd.exec(any(PullImageResultCallback.class))).thenReturn(pullCallback);
+
+        final BuildImageCmd buildImageCmd = mock(BuildImageCmd.class);
+        when(dockerClient.buildImageCmd(any(InputStream.class))).thenAnswer(new Answer<BuildImageCmd>() {
+            @Override
+            public BuildImageCmd answer(InvocationOnMock invocation) throws Throwable {
+                IOUtils.toByteArray((InputStream) invocation.getArguments()[0]);
+                return buildImageCmd;
+            }
+        });
+        BuildImageResultCallback callback = mock(BuildImageResultCallback.class);
+        when(buildImageCmd.exec(any(BuildImageResultCallback.class))).thenReturn(callback);
+        when(callback.awaitCompletion()).thenReturn(callback);
+
+        command.execute(commandData);
+
+        verify(pullCallback, times(1)).awaitSuccess();
+        verify(buildImageCmd, times(1)).withCacheFrom(Collections.singleton(repository + ":" + tag));
+        verify(commandData, times(1)).setDeploymentState(DeploymentState.Success);
+    }
 }
@@ -0,0 +1,144 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License. See License.txt in the project root for
+ * license information.
+ */
+package com.microsoft.jenkins.appservice.commands;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class DockerBuildContextTest {
+
+    @Rule
+    public TemporaryFolder workspace = new TemporaryFolder();
+
+    @Test
+    public void listFiles() throws Exception {
+        File dir = workspace.getRoot();
+        FileUtils.write(new File(dir, "Dockerfile"), "FROM scratch");
+        FileUtils.write(new File(dir, ".dockerignore"), "# Comment\n\n*.log\n!keep.log\n/target\nsrc/*/*.tmp\n");
+        FileUtils.write(new File(dir, "app.jar"), "app");
+        FileUtils.write(new File(dir, "build.log"), "log");
+        FileUtils.write(new File(dir, "keep.log"), "keep");
+        FileUtils.write(new File(dir, "target/classes/App.class"), "class");
+        FileUtils.write(new File(dir, "src/main/App.java"), "java");
+        FileUtils.write(new File(dir, "src/main/App.tmp"), "tmp");
+
+        DockerBuildContext context = new DockerBuildContext(dir);
+        Assert.assertTrue(context.isExcluded("build.log"));
+        Assert.assertFalse(context.isExcluded("keep.log"));
+        Assert.assertTrue(context.isExcluded("target"));
+        Assert.assertTrue(context.isExcluded("target/classes/App.class"));
+        Assert.assertEquals(
+                Arrays.asList(".dockerignore", "Dockerfile", "app.jar", "keep.log", "src/main/App.java"),
+                context.listFiles());
+    }
+
+    @Test
+    public void listFilesWithoutDockerIgnore() throws Exception {
+        File dir = workspace.getRoot();
+        FileUtils.write(new File(dir, "Dockerfile"), "FROM scratch");
+        FileUtils.write(new File(dir, "deep/app.jar"), "app");
+
+        DockerBuildContext context = new DockerBuildContext(dir);
+        Assert.assertEquals(Arrays.asList("Dockerfile", "deep/app.jar"), context.listFiles());
+    }
+
+    @Test
+    public void listFilesWithAnyDirectories() throws Exception {
+        File dir = workspace.getRoot();
+        FileUtils.write(new File(dir, "Dockerfile"), "FROM scratch");
+        FileUtils.write(new File(dir, ".dockerignore"), "**/*.log\n!logs/keep/**\nweb/**/cache\n");
+        FileUtils.write(new File(dir, "build.log"), "log");
+        FileUtils.write(new File(dir, "src/main/build.log"), "log");
+        FileUtils.write(new File(dir, "logs/keep/app.log"), "keep");
+        FileUtils.write(new File(dir, "web/cache/a.js"), "a");
+        FileUtils.write(new File(dir, "web/lib/cache/b.js"), "b");
+        FileUtils.write(new File(dir, "web/lib/app.js"), "app");
+
+        DockerBuildContext context = new DockerBuildContext(dir);
+        Assert.assertTrue(context.isExcluded("build.log"));
+        Assert.assertTrue(context.isExcluded("src/main/build.log"));
+        Assert.assertFalse(context.isExcluded("logs/keep/app.log"));
+        Assert.assertTrue(context.isExcluded("web/cache/a.js"));
+        Assert.assertTrue(context.isExcluded("web/lib/cache/b.js"));
+        Assert.assertEquals(
+                Arrays.asList(".dockerignore", "Dockerfile", "logs/keep/app.log", "src/main/", "web/lib/app.js"),
+                context.listFiles());
+    }
+
+    @Test
+    public void listEmptyDirectories() throws Exception {
+        File dir = workspace.getRoot();
+        FileUtils.write(new File(dir, "Dockerfile"), "FROM scratch");
+        FileUtils.write(new File(dir, ".dockerignore"), "excluded\n*.tmp\n");
+        new File(dir, "data/uploads").mkdirs();
+        new File(dir, "excluded/empty").mkdirs();
+        FileUtils.write(new File(dir, "app/app.jar"), "app");
+        FileUtils.write(new File(dir, "tmp/a.tmp"), "tmp");
+
+        DockerBuildContext context = new DockerBuildContext(dir);
+        // Only the deepest empty directory is needed, its parents are created by the daemon
+        Assert.assertEquals(
+                Arrays.asList(".dockerignore", "Dockerfile", "app/app.jar", "data/uploads/", "tmp/"),
+                context.listFiles());
+
+        List<String> names = new ArrayList<>();
+        try (InputStream stream = context.open()) {
+            TarArchiveInputStream tar = new TarArchiveInputStream(stream);
+            TarArchiveEntry entry;
+            while ((entry = tar.getNextTarEntry()) != null) {
+                names.add(entry.getName());
+                Assert.assertEquals(entry.getName().endsWith("/"), entry.isDirectory());
+            }
+            IOUtils.toByteArray(stream);
+        }
+        context.await();
+        Assert.assertEquals(context.listFiles(), names);
+    }
+
+    @Test
+    public void open() throws Exception {
+        File dir = workspace.getRoot();
+        FileUtils.write(new File(dir, "Dockerfile"), "FROM scratch");
+        FileUtils.write(new File(dir, ".dockerignore"), "*.log");
+        FileUtils.write(new File(dir, "build.log"), "log");
+        // Larger than the pipe buffer
+        byte[] large = new byte[1024 * 1024];
+        Arrays.fill(large, (byte) 'x');
+        FileUtils.writeByteArrayToFile(new File(dir, "deep/large.bin"), large);
+
+        List<String> names = new ArrayList<>();
+        try (DockerBuildContext context = new DockerBuildContext(dir)) {
+            try (InputStream stream = context.open()) {
+                TarArchiveInputStream tar = new TarArchiveInputStream(stream);
+                TarArchiveEntry entry;
+                while ((entry = tar.getNextTarEntry()) != null) {
+                    names.add(entry.getName());
+                    if (entry.getName().equals("deep/large.bin")) {
+                        Assert.assertArrayEquals(large, IOUtils.toByteArray(tar));
+                    }
+                }
+                IOUtils.toByteArray(stream);
+            }
+            context.await();
+
+            Assert.assertEquals(3, context.getFileCount());
+            Assert.assertTrue(context.getSize() > large.length);
+        }
+        Assert.assertEquals(Arrays.asList(".dockerignore", "Dockerfile", "deep/large.bin"), names);
+    }
+}
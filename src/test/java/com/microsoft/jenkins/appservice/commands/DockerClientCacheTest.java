@@ -0,0 +1,111 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License. See License.txt in the project root for
+ * license information.
+ */
+package com.microsoft.jenkins.appservice.commands;
+
+import com.github.dockerjava.api.DockerClient;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+
+public class DockerClientCacheTest {
+
+    private static final long NO_TIMEOUT = Long.MAX_VALUE;
+
+    private static final class MockFactory implements DockerClientCache.Factory {
+        private int created;
+
+        @Override
+        public DockerClient create() {
+            created++;
+            return mock(DockerClient.class);
+        }
+    }
+
+    @Test
+    public void reuseClientOfSameKey() throws IOException {
+        DockerClientCache cache = new DockerClientCache(NO_TIMEOUT, 2);
+        MockFactory factory = new MockFactory();
+
+        DockerClient first = cache.acquire("host-a", factory);
+        DockerClient second = cache.acquire("host-a", factory);
+        DockerClient other = cache.acquire("host-b", factory);
+        Assert.assertSame(first, second);
+        Assert.assertNotSame(first, other);
+        Assert.assertEquals(2, factory.created);
+
+        cache.release(first);
+        cache.release(second);
+        cache.release(other);
+        Assert.assertSame(first, cache.acquire("host-a", factory));
+        Assert.assertEquals(2, factory.created);
+        verify(first, never()).close();
+    }
+
+    @Test
+    public void evictIdleClientsOnly() throws IOException {
+        DockerClientCache cache = new DockerClientCache(0, 2);
+        MockFactory factory = new MockFactory();
+
+        DockerClient client = cache.acquire("host-a", factory);
+        DockerClient leased = cache.acquire("host-b", factory);
+        verify(client, never()).close();
+
+        cache.release(client);
+        verify(client).close();
+        verify(leased, never()).close();
+        Assert.assertEquals(1, cache.size());
+
+        Assert.assertNotSame(client, cache.acquire("host-a", factory));
+        Assert.assertEquals(3, factory.created);
+    }
+
+    @Test
+    public void evictIdleClientsInBackground() throws Exception {
+        DockerClientCache cache = new DockerClientCache(50, 2);
+        MockFactory factory = new MockFactory();
+
+        DockerClient client = cache.acquire("host-a", factory);
+        cache.release(client);
+        verify(client, never()).close();
+
+        // Closed without any other lease or release
+        long deadline = System.currentTimeMillis() + 10000;
+        while (cache.size() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(0, cache.size());
+        verify(client, timeout(10000)).close();
+
+        // Checked again once a client is cached
+        client = cache.acquire("host-a", factory);
+        cache.release(client);
+        verify(client, timeout(10000)).close();
+    }
+
+    @Test
+    public void evictLeastRecentlyUsedClients() throws IOException {
+        DockerClientCache cache = new DockerClientCache(NO_TIMEOUT, 2);
+        MockFactory factory = new MockFactory();
+
+        DockerClient a = cache.acquire("host-a", factory);
+        DockerClient b = cache.acquire("host-b", factory);
+        cache.release(a);
+        cache.release(b);
+        cache.acquire("host-a", factory);
+
+        DockerClient c = cache.acquire("host-c", factory);
+        verify(b).close();
+        verify(a, never()).close();
+        verify(c, never()).close();
+        Assert.assertEquals(2, cache.size());
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License. See License.txt in the project root for
+ * license information.
+ */
+package com.microsoft.jenkins.appservice.commands;
+
+import com.microsoft.azure.management.appservice.AppSetting;
+import com.microsoft.azure.management.appservice.WebApp;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.Map;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class DockerDeployCommandTest extends AbstractDockerCommandTest {
+
+    private static final String DIGEST = "sha256:0123456789abcdef";
+
+    private DockerDeployCommand command;
+    private DockerDeployCommand.IDockerDeployCommandData commandData;
+    private WebApp webApp;
+
+    @Before
+    public void setup() {
+        command = new DockerDeployCommand();
+        commandData = mock(DockerDeployCommand.IDockerDeployCommandData.class);
+        webApp = mock(WebApp.class);
+        when(webApp.name()).thenReturn("someApp");
+        when(commandData.getWebApp()).thenReturn(webApp);
+    }
+
+    private DockerBuildInfo runningImage(String deployedDigest) {
+        DockerBuildInfo dockerBuildInfo = defaultExampleBuildInfo()
+                .withLinuxFxVersion("DOCKER|someImage:someTag");
+        dockerBuildInfo.setImageDigest(DIGEST);
+        when(commandData.getDockerBuildInfo()).thenReturn(dockerBuildInfo);
+
+        Map<String, AppSetting> appSettings = Collections.emptyMap();
+        if (deployedDigest != null) {
+            AppSetting setting = mock(AppSetting.class);
+            when(setting.value()).thenReturn(deployedDigest);
+            appSettings = Collections.singletonMap("JENKINS_DOCKER_IMAGE_DIGEST", setting);
+        }
+        when(webApp.appSettings()).thenReturn(appSettings);
+        return dockerBuildInfo;
+    }
+
+    @Test
+    public void skipDeployOfRunningDigest() {
+        runningImage(DIGEST);
+
+        command.execute(commandData);
+
+        verify(webApp, never()).update();
+        verify(webApp, never()).stop();
+        verify(commandData).setDeploymentState(DeploymentState.Success);
+    }
+
+    @Test
+    public void deploySameTagWithOtherDigest() {
+        // The tag was pushed again by a build which failed to update the app
+        runningImage("sha256:fedcba9876543210");
+
+        command.execute(commandData);
+
+        // The update isn't mocked, so it fails after the app was asked for it
+        verify(webApp).update();
+        verify(commandData).setDeploymentState(DeploymentState.HasError);
+    }
+
+    @Test
+    public void deploySameTagWithoutRecordedDigest() {
+        runningImage(null);
+
+        command.execute(commandData);
+
+        verify(webApp).update();
+        verify(commandData).setDeploymentState(DeploymentState.HasError);
+    }
+}
@@ -7,19 +7,26 @@
 package com.microsoft.jenkins.appservice.commands;
 
 import com.github.dockerjava.api.DockerClient;
+import com.github.dockerjava.api.command.InspectImageCmd;
+import com.github.dockerjava.api.command.InspectImageResponse;
 import com.github.dockerjava.api.command.PushImageCmd;
+import com.github.dockerjava.api.model.AuthConfig;
 import com.github.dockerjava.core.command.PushImageResultCallback;
 import com.google.common.io.Files;
 import hudson.FilePath;
 import hudson.model.TaskListener;
 import hudson.util.StreamTaskListener;
+import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 
 import java.io.File;
 import java.nio.charset.Charset;
+import java.util.Collections;
+import java.util.List;
 
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.Mockito.*;
 
 /**
@@ -27,6 +34,8 @@ import static org.mockito.Mockito.*;
  */
 public class DockerPushCommandTest extends AbstractDockerCommandTest {
 
+    private static final String DIGEST = "sha256:0123456789abcdef";
+
     DockerPushCommand command;
     DockerPushCommand.IDockerPushCommandData commandData;
     DockerClient dockerClient;
@@ -54,6 +63,9 @@ public class DockerPushCommandTest extends AbstractDockerCommandTest {
         DockerBuildInfo dockerBuildInfo = defaultExampleBuildInfo();
         when(commandData.getDockerBuildInfo()).thenReturn(dockerBuildInfo);
 
+        // Never pushed, so there's no digest to compare with the registry
+        mockInspectImage(dockerBuildInfo, null);
+
         PushImageCmd pushImageCmd = mock(PushImageCmd.class);
         when(dockerClient.pushImageCmd(command.imageAndTag(dockerBuildInfo))).thenReturn(pushImageCmd);
         when(pushImageCmd.withTag(dockerBuildInfo.getDockerImageTag())).thenReturn(pushImageCmd);
@@ -68,5 +80,60 @@ public class DockerPushCommandTest extends AbstractDockerCommandTest {
         verify(pushImageCmd, times(1)).exec(any(PushImageResultCallback.class));
         verify(callback, times(1)).awaitSuccess();
         verify(commandData, times(1)).setDeploymentState(DeploymentState.Success);
+        Assert.assertNull(dockerBuildInfo.getImageDigest());
+    }
+
+    @Test
+    public void skipPushOfImageInRegistry() throws Exception {
+        AuthConfig authConfig = defaultExampleAuthConfig();
+        try (MockDockerRegistry registry = new MockDockerRegistry(
+                authConfig.getUsername(), authConfig.getPassword(), true)) {
+            DockerBuildInfo dockerBuildInfo = defaultExampleBuildInfo()
+                    .withAuthConfig(authConfig.withRegistryAddress(registry.getUrl()));
+            when(commandData.getDockerBuildInfo()).thenReturn(dockerBuildInfo);
+            registry.withManifest("someImage", "someTag", DIGEST);
+            mockInspectImage(dockerBuildInfo, Collections.singletonList("someImage@" + DIGEST));
+
+            command.execute(commandData);
+
+            verify(dockerClient, never()).pushImageCmd(anyString());
+            verify(commandData, times(1)).setDeploymentState(DeploymentState.Success);
+            Assert.assertEquals(DIGEST, dockerBuildInfo.getImageDigest());
+        }
+    }
+
+    @Test
+    public void pushImageWithOtherDigest() throws Exception {
+        AuthConfig authConfig = defaultExampleAuthConfig();
+        try (MockDockerRegistry registry = new MockDockerRegistry(
+                authConfig.getUsername(), authConfig.getPassword(), true)) {
+            DockerBuildInfo dockerBuildInfo = defaultExampleBuildInfo()
+                    .withAuthConfig(authConfig.withRegistryAddress(registry.getUrl()));
+            when(commandData.getDockerBuildInfo()).thenReturn(dockerBuildInfo);
+            registry.withManifest("someImage", "someTag", "sha256:fedcba9876543210");
+            mockInspectImage(dockerBuildInfo, Collections.singletonList("someImage@" + DIGEST));
+
+            PushImageCmd pushImageCmd = mock(PushImageCmd.class);
+            when(dockerClient.pushImageCmd(command.imageAndTag(dockerBuildInfo))).thenReturn(pushImageCmd);
+            when(pushImageCmd.withTag(dockerBuildInfo.getDockerImageTag())).thenReturn(pushImageCmd);
+            PushImageResultCallback callback = mock(PushImageResultCallback.class);
+            when(pushImageCmd.exec(any(PushImageResultCallback.class))).thenReturn(callback);
+
+            command.execute(commandData);
+
+            verify(callback, times(1)).awaitSuccess();
+            verify(commandData, times(1)).setDeploymentState(DeploymentState.Success);
+            // The callback is mocked, so the daemon never reports the digest of the pushed image
+            Assert.assertNull(dockerBuildInfo.getImageDigest());
+        }
+    }
+
+    private void mockInspectImage(DockerBuildInfo dockerBuildInfo, List<String> repoDigests) throws Exception {
+        InspectImageCmd inspectImageCmd = mock(InspectImageCmd.class);
+        InspectImageResponse response = mock(InspectImageResponse.class);
+        when(dockerClient.inspectImageCmd(command.imageAndTag(dockerBuildInfo))).thenReturn(inspectImageCmd);
+        when(inspectImageCmd.exec()).thenReturn(response);
+        when(response.getRepoDigests()).thenReturn(repoDigests);
+        when(response.getSize()).thenReturn(1024L * 1024L);
     }
 }
@@ -0,0 +1,77 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License. See License.txt in the project root for
+ * license information.
+ */
+package com.microsoft.jenkins.appservice.commands;
+
+import com.github.dockerjava.api.model.PushResponseItem;
+import com.github.dockerjava.api.model.ResponseItem;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class DockerPushProgressTest {
+
+    private static final long MB = 1024 * 1024;
+
+    private static PushResponseItem item(String id, String status) {
+        PushResponseItem item = mock(PushResponseItem.class);
+        when(item.getId()).thenReturn(id);
+        when(item.getStatus()).thenReturn(status);
+        return item;
+    }
+
+    private static PushResponseItem pushing(String id, long current, long total) {
+        PushResponseItem item = item(id, "Pushing");
+        ResponseItem.ProgressDetail detail = mock(ResponseItem.ProgressDetail.class);
+        when(detail.getCurrent()).thenReturn(current);
+        when(detail.getTotal()).thenReturn(total);
+        when(item.getProgressDetail()).thenReturn(detail);
+        return item;
+    }
+
+    @Test
+    public void aggregateLayers() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        DockerPushProgress progress = new DockerPushProgress(new PrintStream(out, true), 1000);
+
+        progress.onNext(item(null, "The push refers to a repository [example.io/foo/bar]"), 0);
+        progress.onNext(item("a", "Preparing"), 0);
+        progress.onNext(item("b", "Preparing"), 0);
+        progress.onNext(item("c", "Preparing"), 0);
+        progress.onNext(item("c", "Layer already exists"), 0);
+        progress.onNext(pushing("a", MB, 2 * MB), 0);
+        progress.onNext(pushing("b", MB, 4 * MB), 500);
+        progress.onNext(pushing("b", 2 * MB, 4 * MB), 1000);
+        progress.onNext(pushing("a", 2 * MB, 2 * MB), 1500);
+        progress.onNext(item("a", "Pushed"), 1500);
+        progress.onNext(item("b", "Retrying in 5 seconds"), 1600);
+        progress.onNext(pushing("b", 4 * MB, 4 * MB), 2000);
+        progress.onNext(item("b", "Pushed"), 2000);
+        progress.onNext(item(null, "tag: digest: sha256:0123 size: 1234"), 2000);
+        progress.print();
+
+        Assert.assertEquals(3, progress.getLayersDone());
+        Assert.assertEquals(1, progress.getLayersExisting());
+        Assert.assertEquals(6 * MB, progress.getBytesPushed());
+        Assert.assertEquals(3 * MB, progress.getBytesPerSecond(2000), 0);
+        Assert.assertEquals("sha256:0123", progress.getDigest());
+
+        String[] lines = new String(out.toByteArray(), StandardCharsets.UTF_8).split("\\r?\\n");
+        Assert.assertArrayEquals(new String[]{
+                "The push refers to a repository [example.io/foo/bar]",
+                "Pushing: 1/3 layer(s) done, 3.0 MB, 3.0 MB/s",
+                "b: Retrying in 5 seconds",
+                "Pushing: 2/3 layer(s) done, 6.0 MB, 3.0 MB/s",
+                "tag: digest: sha256:0123 size: 1234",
+                "Pushed 2 layer(s), 1 already in the registry: 6.0 MB in 2000 ms (3.0 MB/s)",
+        }, lines);
+    }
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License. See License.txt in the project root for
+ * license information.
+ */
+package com.microsoft.jenkins.appservice.commands;
+
+import com.github.dockerjava.api.model.AuthConfig;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+
+public class DockerRegistryClientTest extends AbstractDockerCommandTest {
+
+    private static final String DIGEST = "sha256:0123456789abcdef";
+
+    @Test
+    public void getManifestDigestWithToken() throws IOException {
+        AuthConfig authConfig = defaultExampleAuthConfig();
+        try (MockDockerRegistry registry = new MockDockerRegistry(
+                authConfig.getUsername(), authConfig.getPassword(), true)) {
+            registry.withManifest("someUser/app", "v1", DIGEST);
+            DockerRegistryClient client = new DockerRegistryClient(registry.getUrl() + "/", authConfig);
+
+            Assert.assertEquals(DIGEST, client.getManifestDigest("someUser/app", "v1"));
+            Assert.assertNull(client.getManifestDigest("someUser/app", "v2"));
+        }
+    }
+
+    @Test
+    public void getManifestDigestWithBasicAuth() throws IOException {
+        AuthConfig authConfig = defaultExampleAuthConfig();
+        try (MockDockerRegistry registry = new MockDockerRegistry(
+                authConfig.getUsername(), authConfig.getPassword(), false)) {
+            registry.withManifest("app", "v1", DIGEST);
+            DockerRegistryClient client = new DockerRegistryClient(registry.getUrl(), authConfig);
+
+            Assert.assertEquals(DIGEST, client.getManifestDigest("app", "v1"));
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void getManifestDigestWithWrongCredentials() throws IOException {
+        AuthConfig authConfig = defaultExampleAuthConfig();
+        try (MockDockerRegistry registry = new MockDockerRegistry(authConfig.getUsername(), "otherPassword", true)) {
+            registry.withManifest("app", "v1", DIGEST);
+            new DockerRegistryClient(registry.getUrl(), authConfig).getManifestDigest("app", "v1");
+        }
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License. See License.txt in the project root for
+ * license information.
+ */
+package com.microsoft.jenkins.appservice.commands;
+
+import org.apache.commons.net.ftp.FTPClient;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class FTPConnectionPoolTest {
+
+    private FTPClientFactory factory;
+
+    @Before
+    public void setup() throws Exception {
+        factory = mock(FTPClientFactory.class);
+        when(factory.connect()).thenAnswer(new Answer<FTPClient>() {
+            @Override
+            public FTPClient answer(InvocationOnMock invocation) {
+                FTPClient client = mock(FTPClient.class);
+                when(client.isConnected()).thenReturn(true);
+                return client;
+            }
+        });
+    }
+
+    @Test
+    public void forEachProcessesAllItems() throws Exception {
+        final List<Integer> items = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            items.add(i);
+        }
+
+        final Set<Integer> processed = Collections.newSetFromMap(new ConcurrentHashMap<Integer, Boolean>());
+        final Set<FTPClient> clients = Collections.newSetFromMap(new ConcurrentHashMap<FTPClient, Boolean>());
+        FTPConnectionPool pool = new FTPConnectionPool(factory, 4, System.out);
+        pool.forEach(items, new FTPConnectionPool.Task<Integer>() {
+            @Override
+            public void run(FTPClient ftpClient, Integer item) {
+                Assert.assertTrue("Item processed twice: " + item, processed.add(item));
+                clients.add(ftpClient);
+            }
+        });
+        pool.close();
+
+        Assert.assertEquals(100, processed.size());
+        Assert.assertTrue(clients.size() <= 4);
+        verify(factory, times(4)).connect();
+    }
+
+    @Test
+    public void forEachUsesPrimaryForSingleConnection() throws Exception {
+        FTPConnectionPool pool = new FTPConnectionPool(factory, 1, System.out);
+        final FTPClient primary = pool.getPrimary();
+        pool.forEach(Arrays.asList("a", "b", "c"), new FTPConnectionPool.Task<String>() {
+            @Override
+            public void run(FTPClient ftpClient, String item) {
+                Assert.assertSame(primary, ftpClient);
+            }
+        });
+        pool.close();
+
+        verify(factory, times(1)).connect();
+        verify(primary, times(1)).disconnect();
+    }
+
+    @Test
+    public void forEachRethrowsFailure() throws Exception {
+        final List<Integer> items = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            items.add(i);
+        }
+
+        FTPConnectionPool pool = new FTPConnectionPool(factory, 4, System.out);
+        try {
+            pool.forEach(items, new FTPConnectionPool.Task<Integer>() {
+                @Override
+                public void run(FTPClient ftpClient, Integer item) throws FTPDeployCommand.FTPException {
+                    if (item == 5) {
+                        throw new FTPDeployCommand.FTPException("Fail to upload " + item);
+                    }
+                }
+            });
+            Assert.fail("Should rethrow the failure of the worker");
+        } catch (FTPDeployCommand.FTPException e) {
+            Assert.assertEquals("Fail to upload 5", e.getMessage());
+        } finally {
+            pool.close();
+        }
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License. See License.txt in the project root for
+ * license information.
+ */
+package com.microsoft.jenkins.appservice.commands;
+
+import hudson.util.StreamTaskListener;
+import org.apache.commons.net.ftp.FTPClient;
+import org.apache.commons.net.ftp.FTPFile;
+import org.apache.commons.net.ftp.FTPReply;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.powermock.reflect.Whitebox;
+
+import java.lang.reflect.Constructor;
+import java.nio.charset.Charset;
+
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class FTPDeployCommandTest {
+
+    private static final String SITE_ROOT = "/site/wwwroot/";
+    private static final String ROOT_DIR = "/site/wwwroot/webapps/ROOT";
+    private static final String ROOT_WAR = "/site/wwwroot/webapps/ROOT.war";
+    private static final String ROOT_WAR_UPLOAD = "/site/wwwroot/webapps/ROOT.war.uploading";
+    private static final String OLD_ROOT_DIR_PREFIX = "/site/wwwroot/.ROOT.old-";
+
+    private FTPClient ftpClient;
+    private FTPConnectionPool pool;
+    private Object onSlave;
+
+    @Before
+    public void setup() throws Exception {
+        ftpClient = mock(FTPClient.class);
+        when(ftpClient.isConnected()).thenReturn(true);
+        when(ftpClient.printWorkingDirectory()).thenReturn("/site/wwwroot");
+        when(ftpClient.getReplyCode()).thenReturn(FTPReply.CLOSING_DATA_CONNECTION);
+        when(ftpClient.deleteFile(anyString())).thenReturn(true);
+        when(ftpClient.removeDirectory(anyString())).thenReturn(true);
+        when(ftpClient.changeWorkingDirectory(ROOT_DIR)).thenReturn(true);
+        when(ftpClient.rename(eq(ROOT_DIR), anyString())).thenReturn(true);
+
+        FTPClientFactory factory = mock(FTPClientFactory.class);
+        when(factory.connect()).thenReturn(ftpClient);
+        pool = new FTPConnectionPool(factory, 1, System.out);
+
+        Class<?> onSlaveClass = Class.forName(FTPDeployCommand.class.getName() + "$FTPDeployCommandOnSlave");
+        Constructor<?> constructor = onSlaveClass.getDeclaredConstructors()[0];
+        constructor.setAccessible(true);
+        onSlave = constructor.newInstance(new StreamTaskListener(System.out, Charset.defaultCharset()),
+                "ftp://example.com", "user", "password", null, "", "", "**/*.war", 1, false, false, false);
+    }
+
+    @Test
+    public void swapTomcatRoot() throws Exception {
+        when(ftpClient.rename(ROOT_WAR_UPLOAD, ROOT_WAR)).thenReturn(true);
+
+        Whitebox.invokeMethod(onSlave, "swapTomcatRoot", ftpClient);
+
+        ArgumentCaptor<String> oldRootDir = ArgumentCaptor.forClass(String.class);
+        InOrder inOrder = inOrder(ftpClient);
+        inOrder.verify(ftpClient).rename(eq(ROOT_DIR), oldRootDir.capture());
+        inOrder.verify(ftpClient).deleteFile(ROOT_WAR);
+        inOrder.verify(ftpClient).rename(ROOT_WAR_UPLOAD, ROOT_WAR);
+        Assert.assertTrue(oldRootDir.getValue().startsWith(OLD_ROOT_DIR_PREFIX));
+        verify(ftpClient, never()).rename(anyString(), eq(ROOT_DIR));
+    }
+
+    @Test
+    public void swapTomcatRootRollsBackFailedRename() throws Exception {
+        when(ftpClient.rename(ROOT_WAR_UPLOAD, ROOT_WAR)).thenReturn(false);
+        when(ftpClient.rename(anyString(), eq(ROOT_DIR))).thenReturn(true);
+
+        try {
+            Whitebox.invokeMethod(onSlave, "swapTomcatRoot", ftpClient);
+            Assert.fail("Should fail when the uploaded file can't be renamed");
+        } catch (FTPDeployCommand.FTPException e) {
+            // Expected
+        }
+
+        // The old root directory is moved back to where it was
+        ArgumentCaptor<String> oldRootDir = ArgumentCaptor.forClass(String.class);
+        verify(ftpClient).rename(eq(ROOT_DIR), oldRootDir.capture());
+        verify(ftpClient).rename(oldRootDir.getValue(), ROOT_DIR);
+    }
+
+    @Test
+    public void removeOldTomcatRoots() throws Exception {
+        when(ftpClient.mlistDir(SITE_ROOT)).thenReturn(new FTPFile[]{
+                ftpFile(".", FTPFile.DIRECTORY_TYPE),
+                ftpFile(".ROOT.old-1000", FTPFile.DIRECTORY_TYPE),
+                ftpFile(".ROOT.old-2000", FTPFile.DIRECTORY_TYPE),
+                ftpFile("webapps", FTPFile.DIRECTORY_TYPE),
+                ftpFile(".ROOT.old-notes.txt", FTPFile.FILE_TYPE)
+        });
+        when(ftpClient.changeWorkingDirectory(OLD_ROOT_DIR_PREFIX + "1000")).thenReturn(true);
+        when(ftpClient.changeWorkingDirectory(OLD_ROOT_DIR_PREFIX + "2000")).thenReturn(true);
+        when(ftpClient.mlistDir(OLD_ROOT_DIR_PREFIX + "1000")).thenReturn(new FTPFile[]{
+                ftpFile("index.jsp", FTPFile.FILE_TYPE)
+        });
+        when(ftpClient.mlistDir(OLD_ROOT_DIR_PREFIX + "2000")).thenReturn(new FTPFile[0]);
+
+        Whitebox.invokeMethod(onSlave, "removeOldTomcatRoots", pool);
+        pool.close();
+
+        verify(ftpClient).deleteFile(OLD_ROOT_DIR_PREFIX + "1000/index.jsp");
+        verify(ftpClient).removeDirectory(OLD_ROOT_DIR_PREFIX + "1000");
+        verify(ftpClient).removeDirectory(OLD_ROOT_DIR_PREFIX + "2000");
+        verify(ftpClient, never()).removeDirectory(SITE_ROOT + "webapps");
+        verify(ftpClient, never()).deleteFile(SITE_ROOT + ".ROOT.old-notes.txt");
+    }
+
+    private static FTPFile ftpFile(String name, int type) {
+        FTPFile file = new FTPFile();
+        file.setName(name);
+        file.setType(type);
+        return file;
+    }
+}
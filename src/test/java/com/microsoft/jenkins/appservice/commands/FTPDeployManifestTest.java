@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License. See License.txt in the project root for
+ * license information.
+ */
+package com.microsoft.jenkins.appservice.commands;
+
+import hudson.FilePath;
+import org.apache.commons.io.FileUtils;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.Set;
+
+public class FTPDeployManifestTest {
+
+    @Rule
+    public TemporaryFolder workspace = new TemporaryFolder();
+
+    @Test
+    public void readWrite() throws Exception {
+        FTPDeployManifest manifest = new FTPDeployManifest();
+        manifest.put("index.html", 10, "aaaa");
+        manifest.put("deep/dir with space/f.txt", 20, "bbbb");
+
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        manifest.write(stream);
+        FTPDeployManifest read = FTPDeployManifest.read(new ByteArrayInputStream(stream.toByteArray()));
+
+        Assert.assertEquals(2, read.size());
+        Assert.assertTrue(read.isSame(manifest, "index.html"));
+        Assert.assertTrue(read.isSame(manifest, "deep/dir with space/f.txt"));
+    }
+
+    @Test(expected = IOException.class)
+    public void readUnrecognized() throws Exception {
+        FTPDeployManifest.read(new ByteArrayInputStream("not a manifest".getBytes("UTF-8")));
+    }
+
+    @Test
+    public void isSame() throws Exception {
+        File file = workspace.newFile("f.txt");
+        FileUtils.write(file, "content");
+
+        FTPDeployManifest local = new FTPDeployManifest();
+        local.put("f.txt", new FilePath(file));
+
+        FTPDeployManifest remote = new FTPDeployManifest();
+        Assert.assertFalse(local.isSame(remote, "f.txt"));
+
+        remote.put("f.txt", new FilePath(file));
+        Assert.assertTrue(local.isSame(remote, "f.txt"));
+
+        // Same size, different content
+        FileUtils.write(file, "CONTENT");
+        local.put("f.txt", new FilePath(file));
+        Assert.assertFalse(local.isSame(remote, "f.txt"));
+    }
+
+    @Test
+    public void getPathsNotIn() {
+        FTPDeployManifest previous = new FTPDeployManifest();
+        previous.put("a.txt", 1, "a");
+        previous.put("b.txt", 1, "b");
+
+        FTPDeployManifest current = new FTPDeployManifest();
+        current.put("b.txt", 1, "b");
+        current.put("c.txt", 1, "c");
+
+        Set<String> removed = previous.getPathsNotIn(current);
+        Assert.assertEquals(1, removed.size());
+        Assert.assertTrue(removed.contains("a.txt"));
+    }
+
+    @Test
+    public void getRemotePathOutsideWebRoot() {
+        String root = FTPDeployManifest.getRemotePath("/site/wwwroot/");
+        Assert.assertTrue(root.startsWith("/site/.azure-ftp-manifest-"));
+        Assert.assertFalse(root.startsWith("/site/wwwroot/"));
+
+        // Keyed by the normalized target directory
+        Assert.assertEquals(root, FTPDeployManifest.getRemotePath("/site/wwwroot"));
+        Assert.assertEquals(root, FTPDeployManifest.getRemotePath("/site/wwwroot/webapps/.."));
+        Assert.assertFalse(root.equals(FTPDeployManifest.getRemotePath("/site/wwwroot/webapps")));
+    }
+}
@@ -0,0 +1,44 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License. See License.txt in the project root for
+ * license information.
+ */
+package com.microsoft.jenkins.appservice.commands;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.List;
+
+public class FTPDeployMetricsActionTest {
+
+    @Test
+    public void metrics() {
+        FTPDeployMetrics metrics = new FTPDeployMetrics();
+        metrics.setConnectMillis(100);
+        metrics.setPrepareMillis(200);
+        metrics.setUploadMillis(2000);
+        metrics.setCleanupMillis(50);
+        metrics.setFilesRemoved(3);
+        metrics.recordUpload(1000, 5);
+        metrics.recordUpload(3000, 10);
+        metrics.recordUpload(4000, 11);
+        metrics.recordUpload(2000, 60000);
+
+        FTPDeployMetricsAction action = new FTPDeployMetricsAction(metrics);
+        Assert.assertEquals(2350, action.getTotalMillis());
+        Assert.assertEquals(4, action.getFilesUploaded());
+        Assert.assertEquals(3, action.getFilesRemoved());
+        Assert.assertEquals(10000, action.getBytesUploaded());
+        Assert.assertEquals(5000, action.getBytesPerSecond());
+
+        List<FTPDeployMetricsAction.LatencyBucket> buckets = action.getUploadLatency();
+        Assert.assertEquals(FTPDeployMetrics.LATENCY_BUCKETS.length + 1, buckets.size());
+        Assert.assertEquals(10, buckets.get(0).getUpperBoundMillis());
+        Assert.assertEquals(2, buckets.get(0).getCount());
+        Assert.assertEquals(50, buckets.get(1).getUpperBoundMillis());
+        Assert.assertEquals(1, buckets.get(1).getCount());
+        Assert.assertEquals(-1, buckets.get(buckets.size() - 1).getUpperBoundMillis());
+        Assert.assertEquals(1, buckets.get(buckets.size() - 1).getCount());
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License. See License.txt in the project root for
+ * license information.
+ */
+package com.microsoft.jenkins.appservice.commands;
+
+import org.apache.commons.net.ftp.FTPClient;
+import org.apache.commons.net.ftp.FTPFile;
+import org.apache.commons.net.ftp.FTPReply;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.InOrder;
+
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class FTPDirectoryRemoverTest {
+
+    private FTPClient ftpClient;
+    private FTPConnectionPool pool;
+
+    @Before
+    public void setup() throws Exception {
+        ftpClient = mock(FTPClient.class);
+        when(ftpClient.isConnected()).thenReturn(true);
+        when(ftpClient.printWorkingDirectory()).thenReturn("/site/wwwroot");
+        when(ftpClient.getReplyCode()).thenReturn(FTPReply.CLOSING_DATA_CONNECTION);
+        when(ftpClient.deleteFile(anyString())).thenReturn(true);
+        when(ftpClient.removeDirectory(anyString())).thenReturn(true);
+
+        FTPClientFactory factory = mock(FTPClientFactory.class);
+        when(factory.connect()).thenReturn(ftpClient);
+        pool = new FTPConnectionPool(factory, 1, System.out);
+    }
+
+    @Test
+    public void remove() throws Exception {
+        final String root = "/site/wwwroot/webapps/ROOT";
+        when(ftpClient.changeWorkingDirectory(root)).thenReturn(true);
+        when(ftpClient.mlistDir(root)).thenReturn(new FTPFile[]{
+                ftpFile(".", FTPFile.DIRECTORY_TYPE),
+                ftpFile("index.jsp", FTPFile.FILE_TYPE),
+                ftpFile("WEB-INF", FTPFile.DIRECTORY_TYPE)
+        });
+        when(ftpClient.mlistDir(root + "/WEB-INF")).thenReturn(new FTPFile[]{
+                ftpFile("web.xml", FTPFile.FILE_TYPE),
+                ftpFile("lib", FTPFile.DIRECTORY_TYPE)
+        });
+        when(ftpClient.mlistDir(root + "/WEB-INF/lib")).thenReturn(new FTPFile[]{
+                ftpFile("a.jar", FTPFile.FILE_TYPE)
+        });
+
+        int deleted = new FTPDirectoryRemover(pool, System.out).remove(root);
+        pool.close();
+
+        Assert.assertEquals(3, deleted);
+
+        // Files first, then directories bottom-up
+        InOrder inOrder = inOrder(ftpClient);
+        inOrder.verify(ftpClient).deleteFile(root + "/index.jsp");
+        inOrder.verify(ftpClient).deleteFile(root + "/WEB-INF/web.xml");
+        inOrder.verify(ftpClient).deleteFile(root + "/WEB-INF/lib/a.jar");
+        inOrder.verify(ftpClient).removeDirectory(root + "/WEB-INF/lib");
+        inOrder.verify(ftpClient).removeDirectory(root + "/WEB-INF");
+        inOrder.verify(ftpClient).removeDirectory(root);
+    }
+
+    @Test
+    public void removeNotExisting() throws Exception {
+        int deleted = new FTPDirectoryRemover(pool, System.out).remove("/site/wwwroot/webapps/ROOT");
+        pool.close();
+
+        Assert.assertEquals(0, deleted);
+        verify(ftpClient, never()).mlistDir(anyString());
+        verify(ftpClient, never()).removeDirectory(anyString());
+    }
+
+    @Test
+    public void removeFailure() throws Exception {
+        final String root = "/site/wwwroot/webapps/ROOT";
+        when(ftpClient.changeWorkingDirectory(root)).thenReturn(true);
+        when(ftpClient.mlistDir(root)).thenReturn(new FTPFile[]{
+                ftpFile("index.jsp", FTPFile.FILE_TYPE)
+        });
+        when(ftpClient.deleteFile(root + "/index.jsp")).thenReturn(false);
+
+        try {
+            new FTPDirectoryRemover(pool, System.out).remove(root);
+            Assert.fail("Should fail when a file can't be deleted");
+        } catch (FTPDeployCommand.FTPException e) {
+            Assert.assertEquals("Fail to delete file: " + root + "/index.jsp", e.getMessage());
+        } finally {
+            pool.close();
+        }
+        verify(ftpClient, never()).removeDirectory(anyString());
+    }
+
+    private static FTPFile ftpFile(String name, int type) {
+        FTPFile file = new FTPFile();
+        file.setName(name);
+        file.setType(type);
+        return file;
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License. See License.txt in the project root for
+ * license information.
+ */
+package com.microsoft.jenkins.appservice.commands;
+
+import org.apache.commons.net.ftp.FTPClient;
+import org.apache.commons.net.ftp.FTPFile;
+import org.apache.commons.net.ftp.FTPReply;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.InOrder;
+
+import java.util.Arrays;
+
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class FTPDirectoryTreeTest {
+
+    @Test
+    public void createMissing() throws Exception {
+        FTPClient ftpClient = mock(FTPClient.class);
+        when(ftpClient.getReplyCode()).thenReturn(FTPReply.CLOSING_DATA_CONNECTION);
+        when(ftpClient.mlistDir("/site/wwwroot")).thenReturn(new FTPFile[]{
+                ftpFile(".", FTPFile.DIRECTORY_TYPE),
+                ftpFile("webapps", FTPFile.DIRECTORY_TYPE),
+                ftpFile("index.html", FTPFile.FILE_TYPE)
+        });
+        when(ftpClient.mlistDir("/site/wwwroot/webapps")).thenReturn(new FTPFile[0]);
+        when(ftpClient.makeDirectory(anyString())).thenReturn(true);
+
+        FTPDirectoryTree tree = new FTPDirectoryTree("/site/wwwroot/");
+        int created = tree.createMissing(ftpClient, Arrays.asList(
+                "/site/wwwroot/webapps/ROOT/WEB-INF",
+                "/site/wwwroot/webapps/ROOT",
+                "/site/wwwroot/css",
+                "/site/wwwroot"), System.out);
+
+        Assert.assertEquals(3, created);
+        InOrder inOrder = inOrder(ftpClient);
+        inOrder.verify(ftpClient).makeDirectory("/site/wwwroot/css");
+        inOrder.verify(ftpClient).makeDirectory("/site/wwwroot/webapps/ROOT");
+        inOrder.verify(ftpClient).makeDirectory("/site/wwwroot/webapps/ROOT/WEB-INF");
+        verify(ftpClient, never()).makeDirectory("/site/wwwroot/webapps");
+
+        // Directories that can't exist on the server are never listed
+        verify(ftpClient, never()).mlistDir("/site/wwwroot/webapps/ROOT");
+        verify(ftpClient, never()).mlistDir("/site/wwwroot/css");
+
+        // Directories are known once created
+        tree.createMissing(ftpClient, Arrays.asList("/site/wwwroot/webapps/ROOT/WEB-INF"), System.out);
+        verify(ftpClient, times(1)).makeDirectory("/site/wwwroot/webapps/ROOT/WEB-INF");
+    }
+
+    @Test
+    public void createMissingFallsBackToList() throws Exception {
+        FTPClient ftpClient = mock(FTPClient.class);
+        when(ftpClient.getReplyCode()).thenReturn(FTPReply.UNRECOGNIZED_COMMAND);
+        when(ftpClient.mlistDir(anyString())).thenReturn(new FTPFile[0]);
+        when(ftpClient.listDirectories("/site/wwwroot")).thenReturn(new FTPFile[]{
+                ftpFile("webapps", FTPFile.DIRECTORY_TYPE)
+        });
+
+        FTPDirectoryTree tree = new FTPDirectoryTree("/site/wwwroot");
+        int created = tree.createMissing(ftpClient, Arrays.asList("/site/wwwroot/webapps"), System.out);
+
+        Assert.assertEquals(0, created);
+        verify(ftpClient, never()).makeDirectory(anyString());
+    }
+
+    private static FTPFile ftpFile(String name, int type) {
+        FTPFile file = new FTPFile();
+        file.setName(name);
+        file.setType(type);
+        return file;
+    }
+}
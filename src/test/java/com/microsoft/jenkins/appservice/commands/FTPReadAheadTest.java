@@ -0,0 +1,63 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License. See License.txt in the project root for
+ * license information.
+ */
+package com.microsoft.jenkins.appservice.commands;
+
+import hudson.FilePath;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+public class FTPReadAheadTest {
+
+    @Rule
+    public TemporaryFolder workspace = new TemporaryFolder();
+
+    @Test
+    public void open() throws Exception {
+        final List<FilePath> files = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            File file = workspace.newFile("file" + i);
+            FileUtils.write(file, "content" + i);
+            files.add(new FilePath(file));
+        }
+        File large = workspace.newFile("large");
+        FileUtils.writeByteArrayToFile(large, new byte[1024]);
+        files.add(new FilePath(large));
+
+        // Only a few small files fit into memory at the same time
+        FTPReadAhead readAhead = new FTPReadAhead(files, 100, 30);
+        readAhead.start();
+        try {
+            for (int i = 0; i < 20; i++) {
+                try (InputStream stream = readAhead.open(files.get(i))) {
+                    Assert.assertEquals("content" + i, IOUtils.toString(stream, "UTF-8"));
+                }
+            }
+
+            try (InputStream stream = readAhead.open(new FilePath(large))) {
+                Assert.assertFalse("Large file is read from disk", stream instanceof ByteArrayInputStream);
+                Assert.assertEquals(1024, IOUtils.toByteArray(stream).length);
+            }
+
+            // Opening again reads from disk
+            try (InputStream stream = readAhead.open(files.get(0))) {
+                Assert.assertFalse(stream instanceof ByteArrayInputStream);
+                Assert.assertEquals("content0", IOUtils.toString(stream, "UTF-8"));
+            }
+        } finally {
+            readAhead.close();
+        }
+    }
+}
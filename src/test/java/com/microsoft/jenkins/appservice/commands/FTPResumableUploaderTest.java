@@ -0,0 +1,221 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License. See License.txt in the project root for
+ * license information.
+ */
+package com.microsoft.jenkins.appservice.commands;
+
+import hudson.FilePath;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.net.ftp.FTPClient;
+import org.apache.commons.net.ftp.FTPReply;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.SocketException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class FTPResumableUploaderTest {
+
+    private static final String REMOTE_PATH = "/site/wwwroot/webapps/ROOT.war";
+
+    @Rule
+    public TemporaryFolder workspace = new TemporaryFolder();
+
+    private FTPClientFactory factory;
+    private final List<FTPClient> clients = new ArrayList<>();
+
+    /**
+     * The remote file of the FTP stand-in, shared by all the connections.
+     */
+    private final ByteArrayOutputStream remoteFile = new ByteArrayOutputStream();
+
+    /**
+     * Number of bytes each connection accepts before it's dropped, -1 to never drop, or
+     * {@link #DROP_BEFORE_TRANSFER} to drop before the server accepted the transfer.
+     */
+    private final List<Integer> dropAfter = new ArrayList<>();
+
+    private static final int DROP_BEFORE_TRANSFER = -2;
+
+    @Before
+    public void setup() throws Exception {
+        factory = mock(FTPClientFactory.class);
+        when(factory.connect()).thenAnswer(new Answer<FTPClient>() {
+            @Override
+            public FTPClient answer(InvocationOnMock invocation) throws Exception {
+                return newClient(dropAfter.get(clients.size()));
+            }
+        });
+    }
+
+    @Test
+    public void uploadResumesAfterDroppedConnection() throws Exception {
+        final byte[] content = new byte[100 * 1024];
+        for (int i = 0; i < content.length; i++) {
+            content[i] = (byte) i;
+        }
+        final File file = workspace.newFile("ROOT.war");
+        FileUtils.writeByteArrayToFile(file, content);
+
+        // Connection is dropped at 90% of the first transfer
+        dropAfter.add(90 * 1024);
+        dropAfter.add(-1);
+
+        final FTPConnectionPool pool = new FTPConnectionPool(factory, 1, System.out);
+        new FTPResumableUploader(pool, null, 3, 1, System.out)
+                .upload(pool.getPrimary(), new FilePath(file), REMOTE_PATH);
+        pool.close();
+
+        Assert.assertEquals(2, clients.size());
+        Assert.assertArrayEquals(content, remoteFile.toByteArray());
+        verify(clients.get(0), times(1)).disconnect();
+        verify(clients.get(1)).setRestartOffset(90 * 1024);
+    }
+
+    @Test
+    public void uploadReplacesStaleFileOfSameSize() throws Exception {
+        uploadReplacesStaleFile(100 * 1024);
+    }
+
+    @Test
+    public void uploadReplacesShorterStaleFile() throws Exception {
+        uploadReplacesStaleFile(40 * 1024);
+    }
+
+    private void uploadReplacesStaleFile(int staleSize) throws Exception {
+        final byte[] content = new byte[100 * 1024];
+        for (int i = 0; i < content.length; i++) {
+            content[i] = (byte) i;
+        }
+        final File file = workspace.newFile("ROOT.war");
+        FileUtils.writeByteArrayToFile(file, content);
+
+        // Artifact of the previous deployment
+        remoteFile.write(new byte[staleSize]);
+
+        // Connection is dropped while opening the data connection, before the file is touched
+        dropAfter.add(DROP_BEFORE_TRANSFER);
+        dropAfter.add(-1);
+
+        final FTPConnectionPool pool = new FTPConnectionPool(factory, 1, System.out);
+        new FTPResumableUploader(pool, null, 3, 1, System.out)
+                .upload(pool.getPrimary(), new FilePath(file), REMOTE_PATH);
+        pool.close();
+
+        Assert.assertEquals(2, clients.size());
+        Assert.assertArrayEquals(content, remoteFile.toByteArray());
+        verify(clients.get(1), never()).setRestartOffset(anyLong());
+        verify(clients.get(1), times(1)).storeFile(eq(REMOTE_PATH), any(InputStream.class));
+    }
+
+    @Test
+    public void uploadGivesUpAfterMaxRetries() throws Exception {
+        final File file = workspace.newFile("ROOT.war");
+        FileUtils.writeByteArrayToFile(file, new byte[1024]);
+
+        dropAfter.add(0);
+        dropAfter.add(0);
+        dropAfter.add(0);
+
+        final FTPConnectionPool pool = new FTPConnectionPool(factory, 1, System.out);
+        try {
+            new FTPResumableUploader(pool, null, 2, 1, System.out)
+                    .upload(pool.getPrimary(), new FilePath(file), REMOTE_PATH);
+            Assert.fail("Should give up after the retries are used");
+        } catch (SocketException e) {
+            Assert.assertEquals(3, clients.size());
+        } finally {
+            pool.close();
+        }
+    }
+
+    @Test
+    public void uploadDoesNotRetryPermanentFailure() throws Exception {
+        final File file = workspace.newFile("ROOT.war");
+        FileUtils.writeByteArrayToFile(file, new byte[1024]);
+
+        final FTPClient ftpClient = mock(FTPClient.class);
+        when(ftpClient.storeFile(anyString(), any(InputStream.class))).thenReturn(false);
+        when(ftpClient.getReplyCode()).thenReturn(FTPReply.FILE_UNAVAILABLE);
+
+        try {
+            new FTPResumableUploader(null, null, 3, 1, System.out)
+                    .upload(ftpClient, new FilePath(file), REMOTE_PATH);
+            Assert.fail("Should fail on permanent failure");
+        } catch (FTPDeployCommand.FTPException e) {
+            Assert.assertEquals("Fail to upload file to: " + REMOTE_PATH, e.getMessage());
+        }
+        verify(ftpClient, times(1)).storeFile(anyString(), any(InputStream.class));
+        verify(ftpClient, never()).sendCommand(eq("SIZE"), anyString());
+    }
+
+    private FTPClient newClient(final int limit) throws IOException {
+        final FTPClient ftpClient = mock(FTPClient.class);
+        when(ftpClient.isConnected()).thenReturn(true);
+        when(ftpClient.sendCommand("SIZE", REMOTE_PATH)).thenReturn(FTPReply.FILE_STATUS);
+        when(ftpClient.getReplyString()).thenAnswer(new Answer<String>() {
+            @Override
+            public String answer(InvocationOnMock invocation) {
+                return FTPReply.FILE_STATUS + " " + remoteFile.size() + "\r\n";
+            }
+        });
+        final long[] restartOffset = {0};
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) {
+                restartOffset[0] = invocation.<Long>getArgument(0);
+                return null;
+            }
+        }).when(ftpClient).setRestartOffset(anyLong());
+        when(ftpClient.storeFile(eq(REMOTE_PATH), any(InputStream.class))).thenAnswer(new Answer<Boolean>() {
+            @Override
+            public Boolean answer(InvocationOnMock invocation) throws IOException {
+                if (limit == DROP_BEFORE_TRANSFER) {
+                    throw new SocketException("Connection reset");
+                }
+                // Like a server, STOR replaces the file and REST keeps the bytes before the offset
+                truncateRemoteFile(restartOffset[0]);
+                restartOffset[0] = 0;
+
+                InputStream stream = invocation.getArgument(1);
+                if (limit < 0) {
+                    IOUtils.copy(stream, remoteFile);
+                    return true;
+                }
+                IOUtils.copyLarge(stream, remoteFile, 0, limit);
+                throw new SocketException("Connection reset");
+            }
+        });
+        clients.add(ftpClient);
+        return ftpClient;
+    }
+
+    private void truncateRemoteFile(long size) {
+        byte[] content = remoteFile.toByteArray();
+        remoteFile.reset();
+        remoteFile.write(content, 0, (int) Math.min(size, content.length));
+    }
+}
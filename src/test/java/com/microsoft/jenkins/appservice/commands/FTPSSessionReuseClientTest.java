@@ -0,0 +1,138 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License. See License.txt in the project root for
+ * license information.
+ */
+package com.microsoft.jenkins.appservice.commands;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.powermock.reflect.Whitebox;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.SSLSessionContext;
+import javax.net.ssl.SSLSocket;
+import java.net.InetAddress;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.contains;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class FTPSSessionReuseClientTest {
+
+    private static final int DATA_PORT = 10022;
+
+    /**
+     * Stands in for the JSSE session cache, with the same put method.
+     */
+    private static final class SessionCache {
+        private final Map<Object, Object> entries = new HashMap<>();
+
+        private Object put(final Object key, final Object value) {
+            return entries.put(key, value);
+        }
+    }
+
+    /**
+     * Stands in for the JSSE session context, with the same cache field.
+     */
+    private static final class SessionContext implements SSLSessionContext {
+        private final SessionCache sessionHostPortCache = new SessionCache();
+
+        @Override
+        public SSLSession getSession(final byte[] sessionId) {
+            return null;
+        }
+
+        @Override
+        public Enumeration<byte[]> getIds() {
+            return Collections.emptyEnumeration();
+        }
+
+        @Override
+        public void setSessionTimeout(final int seconds) {
+        }
+
+        @Override
+        public int getSessionTimeout() {
+            return 0;
+        }
+
+        @Override
+        public void setSessionCacheSize(final int size) {
+        }
+
+        @Override
+        public int getSessionCacheSize() {
+            return 0;
+        }
+    }
+
+    private SessionContext sessionContext;
+    private SSLSession session;
+    private SSLSocket dataSocket;
+    private FTPSSessionReuseClient.HandshakeListener handshakeListener;
+    private FTPSSessionReuseClient client;
+
+    @Before
+    public void setup() throws Exception {
+        sessionContext = new SessionContext();
+        session = mock(SSLSession.class);
+        when(session.getId()).thenReturn(new byte[]{1, 2, 3});
+        when(session.isValid()).thenReturn(true);
+        when(session.getProtocol()).thenReturn("TLSv1.2");
+        when(session.getSessionContext()).thenReturn(sessionContext);
+
+        SSLSocket controlSocket = mock(SSLSocket.class);
+        when(controlSocket.getSession()).thenReturn(session);
+
+        dataSocket = mock(SSLSocket.class);
+        when(dataSocket.getPort()).thenReturn(DATA_PORT);
+        when(dataSocket.getInetAddress())
+                .thenReturn(InetAddress.getByAddress("Example.FTP.Azurewebsites.Windows.Net", new byte[]{10, 0, 0, 1}));
+
+        handshakeListener = mock(FTPSSessionReuseClient.HandshakeListener.class);
+        client = new FTPSSessionReuseClient(SSLContext.getDefault(), handshakeListener);
+        Whitebox.setInternalState(client, "_socket_", controlSocket);
+    }
+
+    @Test
+    public void cacheControlSessionForDataSocket() throws Exception {
+        client._prepareDataSocket_(dataSocket);
+
+        Assert.assertEquals(2, sessionContext.sessionHostPortCache.entries.size());
+        Assert.assertSame(session,
+                sessionContext.sessionHostPortCache.entries.get("example.ftp.azurewebsites.windows.net:10022"));
+        Assert.assertSame(session, sessionContext.sessionHostPortCache.entries.get("10.0.0.1:10022"));
+        verify(handshakeListener, never()).sessionReuseUnavailable(anyString());
+    }
+
+    @Test
+    public void skipTls13Session() throws Exception {
+        when(session.getProtocol()).thenReturn("TLSv1.3");
+
+        client._prepareDataSocket_(dataSocket);
+
+        Assert.assertTrue(sessionContext.sessionHostPortCache.entries.isEmpty());
+        verify(handshakeListener).sessionReuseUnavailable(contains("TLS 1.3"));
+    }
+
+    @Test
+    public void skipInaccessibleSessionCache() throws Exception {
+        when(session.getSessionContext()).thenReturn(mock(SSLSessionContext.class));
+
+        // Falls back to a full handshake, and tells how to enable the reuse
+        client._prepareDataSocket_(dataSocket);
+
+        verify(handshakeListener).sessionReuseUnavailable(contains("--add-opens java.base/sun.security.ssl"));
+    }
+}
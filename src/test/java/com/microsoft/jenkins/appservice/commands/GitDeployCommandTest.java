@@ -5,26 +5,65 @@
  */
 package com.microsoft.jenkins.appservice.commands;
 
+import com.cloudbees.plugins.credentials.common.StandardUsernamePasswordCredentials;
+import hudson.EnvVars;
 import hudson.FilePath;
+import hudson.model.TaskListener;
+import hudson.remoting.Callable;
 import hudson.remoting.VirtualChannel;
+import hudson.util.StreamTaskListener;
 import org.apache.commons.io.FileUtils;
+import org.eclipse.jgit.dircache.DirCache;
+import org.eclipse.jgit.dircache.DirCacheEntry;
 import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.FileMode;
 import org.eclipse.jgit.lib.IndexDiff;
+import org.eclipse.jgit.lib.ObjectInserter;
 import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.lib.StoredConfig;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.storage.pack.PackConfig;
+import org.eclipse.jgit.transport.URIish;
 import org.eclipse.jgit.treewalk.FileTreeIterator;
+import org.eclipse.jgit.util.FS;
 import org.jenkinsci.plugins.gitclient.Git;
 import org.jenkinsci.plugins.gitclient.GitClient;
+import org.jenkinsci.plugins.gitclient.JGitTool;
 import org.jenkinsci.plugins.gitclient.RepositoryCallback;
 import com.microsoft.jenkins.appservice.commands.GitDeployCommand;
 import org.junit.Assert;
+import org.junit.Assume;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 import org.powermock.reflect.Whitebox;
 
 import java.io.File;
 import java.io.IOException;
+import java.lang.reflect.Constructor;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 
 public class GitDeployCommandTest {
 
@@ -32,7 +71,7 @@ public class GitDeployCommandTest {
     public TemporaryFolder workspace = new TemporaryFolder();
 
     @Test
-    public void cleanWorkingDirectory() throws Exception {
+    public void syncFilesUpdatesChangedFilesOnly() throws Exception {
         GitDeployCommand command = new GitDeployCommand();
         File repo = workspace.newFolder("repo");
         GitClient git = Git.with(null, null)
@@ -51,25 +90,38 @@ public class GitDeployCommandTest {
 
         git.commit("c1");
 
-        Whitebox.invokeMethod(command, "cleanWorkingDirectory", git);
+        File src = workspace.newFolder("src");
+        final File unchanged = new File(src, "f1.txt");
+        FileUtils.write(unchanged, "f1");
+        FileUtils.write(new File(src, "f2.txt"), "f2-changed");
+        FileUtils.write(new File(src, "f4.txt"), "f4");
+
+        Whitebox.invokeMethod(command, "syncFiles", git, new FilePath(src), "", "**/*.txt");
 
-        // Files on disk should be removed
-        Assert.assertFalse(new File(repo, "f1.txt").exists());
-        Assert.assertFalse(new File(repo, "f2.txt").exists());
+        // Files no longer selected should be removed from disk
         Assert.assertFalse(new File(deepDir, "f3.txt").exists());
+        Assert.assertFalse(deepDir.exists());
+        Assert.assertEquals("f1", FileUtils.readFileToString(new File(repo, "f1.txt")));
+        Assert.assertEquals("f2-changed", FileUtils.readFileToString(new File(repo, "f2.txt")));
+        Assert.assertEquals("f4", FileUtils.readFileToString(new File(repo, "f4.txt")));
 
-        // Files in Git should be removed
+        // Only the differences should be staged
         git.withRepository(new RepositoryCallback<Void>() {
             @Override
             public Void invoke(Repository repo, VirtualChannel channel) throws IOException, InterruptedException {
                 FileTreeIterator workingTreeIt = new FileTreeIterator(repo);
                 IndexDiff diff = new IndexDiff(repo, Constants.HEAD, workingTreeIt);
                 diff.diff();
-                Set<String> removed = diff.getRemoved();
 
-                Assert.assertTrue(removed.contains("f1.txt"));
-                Assert.assertTrue(removed.contains("f2.txt"));
-                Assert.assertTrue(removed.contains("deep/f3.txt"));
+                Assert.assertEquals(Collections.singleton("deep/f3.txt"), diff.getRemoved());
+                Assert.assertEquals(Collections.singleton("f2.txt"), diff.getChanged());
+                Assert.assertEquals(Collections.singleton("f4.txt"), diff.getAdded());
+                Assert.assertTrue(diff.getModified().isEmpty());
+                Assert.assertTrue(diff.getUntracked().isEmpty());
+
+                // Modification time of unchanged files is recorded, so they aren't hashed again next time
+                DirCacheEntry entry = repo.readDirCache().getEntry("f1.txt");
+                Assert.assertEquals(unchanged.lastModified(), entry.getLastModified());
 
                 return null;
             }
@@ -77,7 +129,7 @@ public class GitDeployCommandTest {
     }
 
     @Test
-    public void copyAndAddFiles() throws Exception {
+    public void syncFiles() throws Exception {
         GitDeployCommand command = new GitDeployCommand();
         File repo = workspace.newFolder("repo");
         GitClient git = Git.with(null, null)
@@ -92,8 +144,8 @@ public class GitDeployCommandTest {
         FileUtils.write(new File(deepDir, "f3.txt"), "f3");
         FileUtils.write(new File(src, "exclude.bak"), "exclude");
 
-        Whitebox.invokeMethod(command, "copyAndAddFiles",
-            git, new FilePath(repo), new FilePath(src), "", "**/*.txt");
+        Whitebox.invokeMethod(command, "syncFiles",
+            git, new FilePath(src), "", "**/*.txt");
 
         // Files should be copied
         Assert.assertTrue(new File(repo, "f1.txt").exists());
@@ -121,7 +173,114 @@ public class GitDeployCommandTest {
     }
 
     @Test
-    public void copyAndAddFilesWithSourceDirectory() throws Exception {
+    public void syncFilesKeepsSymbolicLinks() throws Exception {
+        Assume.assumeTrue(FS.DETECTED.supportsSymlinks());
+
+        GitDeployCommand command = new GitDeployCommand();
+        File repo = workspace.newFolder("repo");
+        GitClient git = Git.with(null, null)
+                .in(repo)
+                .getClient();
+        git.init();
+        File src = workspace.newFolder("src");
+        FileUtils.write(new File(src, "f1.txt"), "f1");
+        Files.createSymbolicLink(new File(src, "link.txt").toPath(), Paths.get("f1.txt"));
+
+        Whitebox.invokeMethod(command, "syncFiles", git, new FilePath(src), "", "**/*.txt");
+
+        // The link is copied as a link, not as the file it points to
+        File link = new File(repo, "link.txt");
+        Assert.assertTrue(Files.isSymbolicLink(link.toPath()));
+        Assert.assertEquals(Paths.get("f1.txt"), Files.readSymbolicLink(link.toPath()));
+
+        final String[] linkId = new String[1];
+        git.withRepository(new RepositoryCallback<Void>() {
+            @Override
+            public Void invoke(Repository repo, VirtualChannel channel) throws IOException, InterruptedException {
+                DirCacheEntry entry = repo.readDirCache().getEntry("link.txt");
+                Assert.assertEquals(FileMode.SYMLINK, entry.getFileMode());
+                Assert.assertEquals("f1.txt", new String(repo.open(entry.getObjectId()).getBytes(), "UTF-8"));
+                linkId[0] = entry.getObjectId().name();
+
+                // Staged the same way git would, so the working tree has no modification
+                IndexDiff diff = new IndexDiff(repo, Constants.HEAD, new FileTreeIterator(repo));
+                diff.diff();
+                Assert.assertTrue(diff.getAdded().contains("link.txt"));
+                Assert.assertTrue(diff.getModified().isEmpty());
+                return null;
+            }
+        });
+
+        // An unchanged link is kept, a link pointing elsewhere is staged again
+        FileUtils.write(new File(src, "f2.txt"), "f2");
+        Whitebox.invokeMethod(command, "syncFiles", git, new FilePath(src), "", "**/*.txt");
+        Assert.assertEquals(Paths.get("f1.txt"), Files.readSymbolicLink(link.toPath()));
+
+        Files.delete(new File(src, "link.txt").toPath());
+        Files.createSymbolicLink(new File(src, "link.txt").toPath(), Paths.get("f2.txt"));
+        Whitebox.invokeMethod(command, "syncFiles", git, new FilePath(src), "", "**/*.txt");
+        Assert.assertEquals(Paths.get("f2.txt"), Files.readSymbolicLink(link.toPath()));
+        git.withRepository(new RepositoryCallback<Void>() {
+            @Override
+            public Void invoke(Repository repo, VirtualChannel channel) throws IOException, InterruptedException {
+                DirCacheEntry entry = repo.readDirCache().getEntry("link.txt");
+                Assert.assertEquals(FileMode.SYMLINK, entry.getFileMode());
+                Assert.assertFalse(linkId[0].equals(entry.getObjectId().name()));
+                Assert.assertEquals("f2.txt", new String(repo.open(entry.getObjectId()).getBytes(), "UTF-8"));
+                return null;
+            }
+        });
+    }
+
+    @Test
+    public void syncFilesStagesInSingleIndexUpdate() throws Exception {
+        GitDeployCommand command = new GitDeployCommand();
+        File repo = workspace.newFolder("repo");
+        GitClient client = Git.with(null, null)
+                .in(repo)
+                .getClient();
+        client.init();
+        try (org.eclipse.jgit.api.Git repoGit = org.eclipse.jgit.api.Git.open(repo)) {
+            StoredConfig config = repoGit.getRepository().getConfig();
+            config.setBoolean("core", null, "autocrlf", true);
+            config.save();
+        }
+        GitClient git = spy(client);
+        File src = workspace.newFolder("src");
+        final Map<String, String> contents = new HashMap<>();
+        for (int i = 0; i < 50; i++) {
+            String path = (i % 2 == 0 ? "" : "deep/") + "f" + i + ".txt";
+            // Line endings shouldn't be converted
+            contents.put(path, "line 1\r\nline " + i + "\r\n");
+            FileUtils.write(new File(src, path), contents.get(path));
+        }
+
+        Whitebox.invokeMethod(command, "syncFiles", git, new FilePath(src), "", "**/*.txt");
+
+        // No git add per file, all the files are staged by a single callback on the repository
+        verify(git, never()).add(anyString());
+        verify(git, times(1)).withRepository(any(RepositoryCallback.class));
+
+        git.withRepository(new RepositoryCallback<Void>() {
+            @Override
+            public Void invoke(Repository repo, VirtualChannel channel) throws IOException, InterruptedException {
+                DirCache dc = repo.readDirCache();
+                Assert.assertEquals(contents.size(), dc.getEntryCount());
+                ObjectInserter.Formatter formatter = new ObjectInserter.Formatter();
+                for (Map.Entry<String, String> content : contents.entrySet()) {
+                    DirCacheEntry entry = dc.getEntry(content.getKey());
+                    Assert.assertNotNull(content.getKey(), entry);
+                    Assert.assertEquals(formatter.idFor(Constants.OBJ_BLOB,
+                            content.getValue().getBytes(StandardCharsets.UTF_8)), entry.getObjectId());
+                    Assert.assertTrue(repo.hasObject(entry.getObjectId()));
+                }
+                return null;
+            }
+        });
+    }
+
+    @Test
+    public void syncFilesWithSourceDirectory() throws Exception {
         GitDeployCommand command = new GitDeployCommand();
         File repo = workspace.newFolder("repo");
         GitClient git = Git.with(null, null)
@@ -133,8 +292,8 @@ public class GitDeployCommandTest {
         deepDir.mkdir();
         FileUtils.write(new File(deepDir, "f.txt"), "f3");
 
-        Whitebox.invokeMethod(command, "copyAndAddFiles",
-                git, new FilePath(repo), new FilePath(deepDir), "", "*.txt");
+        Whitebox.invokeMethod(command, "syncFiles",
+                git, new FilePath(deepDir), "", "*.txt");
 
         // Files should be copied
         Assert.assertTrue(new File(repo, "f.txt").exists());
@@ -156,7 +315,7 @@ public class GitDeployCommandTest {
     }
 
     @Test
-    public void copyAndAddFilesWithTargetDirectory() throws Exception {
+    public void syncFilesWithTargetDirectory() throws Exception {
         GitDeployCommand command = new GitDeployCommand();
         File repo = workspace.newFolder("repo");
         GitClient git = Git.with(null, null)
@@ -171,8 +330,8 @@ public class GitDeployCommandTest {
         FileUtils.write(new File(deepDir, "f3.txt"), "f3");
         FileUtils.write(new File(src, "exclude.bak"), "exclude");
 
-        Whitebox.invokeMethod(command, "copyAndAddFiles",
-                git, new FilePath(repo), new FilePath(src), "target", "**/*.txt");
+        Whitebox.invokeMethod(command, "syncFiles",
+                git, new FilePath(src), "target", "**/*.txt");
 
         File targetDir = new File(repo, "target");
         File targetDeepDir = new File(targetDir, "deep");
@@ -203,44 +362,351 @@ public class GitDeployCommandTest {
     }
 
     @Test
-    public void isWorkingTreeChanged() throws Exception {
+    public void isIndexChanged() throws Exception {
         GitDeployCommand command = new GitDeployCommand();
+        File repo = workspace.newFolder("repo");
         GitClient git = Git.with(null, null)
-                .in(workspace.getRoot())
+                .in(repo)
                 .getClient();
         git.init();
+        File src = workspace.newFolder("src");
 
-        // Create a file
-        FileUtils.write(workspace.newFile("f1.txt"), "f1");
-
-        boolean changed = Whitebox.<Boolean>invokeMethod(command, "isWorkingTreeChanged", git);
-        Assert.assertTrue(changed);
+        // Empty repository
+        boolean changed = Whitebox.<Boolean>invokeMethod(command, "isIndexChanged", git);
+        Assert.assertFalse(changed);
 
         // Stage a file
-        git.add("f1.txt");
-        changed = Whitebox.<Boolean>invokeMethod(command, "isWorkingTreeChanged", git);
+        FileUtils.write(new File(src, "f1.txt"), "f1");
+        Whitebox.invokeMethod(command, "syncFiles", git, new FilePath(src), "", "*.txt");
+        changed = Whitebox.<Boolean>invokeMethod(command, "isIndexChanged", git);
         Assert.assertTrue(changed);
 
         // Commit
         git.commit("c1");
-        changed = Whitebox.<Boolean>invokeMethod(command, "isWorkingTreeChanged", git);
+        changed = Whitebox.<Boolean>invokeMethod(command, "isIndexChanged", git);
         Assert.assertFalse(changed);
 
-        // Remove it
-        new File(workspace.getRoot(), "f1.txt").delete();
-        changed = Whitebox.<Boolean>invokeMethod(command, "isWorkingTreeChanged", git);
-        Assert.assertTrue(changed);
-
-        // Revert
-        git.clean();
-        changed = Whitebox.<Boolean>invokeMethod(command, "isWorkingTreeChanged", git);
+        // Same files
+        Whitebox.invokeMethod(command, "syncFiles", git, new FilePath(src), "", "*.txt");
+        changed = Whitebox.<Boolean>invokeMethod(command, "isIndexChanged", git);
         Assert.assertFalse(changed);
 
         // Change content
-        FileUtils.write(new File(workspace.getRoot(), "f1.txt"), "f1-changed");
-        changed = Whitebox.<Boolean>invokeMethod(command, "isWorkingTreeChanged", git);
+        FileUtils.write(new File(src, "f1.txt"), "f1-changed");
+        Whitebox.invokeMethod(command, "syncFiles", git, new FilePath(src), "", "*.txt");
+        changed = Whitebox.<Boolean>invokeMethod(command, "isIndexChanged", git);
+        Assert.assertTrue(changed);
+        git.commit("c2");
+
+        // Remove it
+        new File(src, "f1.txt").delete();
+        Whitebox.invokeMethod(command, "syncFiles", git, new FilePath(src), "", "*.txt");
+        changed = Whitebox.<Boolean>invokeMethod(command, "isIndexChanged", git);
         Assert.assertTrue(changed);
     }
 
+    @Test
+    public void configurePack() throws Exception {
+        GitDeployCommand.PackOptions options = new GitDeployCommand.PackOptions("jar, .dll *.so,,", 1, 2);
+        Assert.assertEquals("*.jar -delta\n*.dll -delta\n*.so -delta\n", options.getAttributes());
+
+        File repo = workspace.newFolder("repo");
+        GitClient git = Git.with(null, null)
+                .in(repo)
+                .getClient();
+        git.init();
+        git.withRepository(configurePackCallback(options, false));
+
+        Assert.assertEquals("*.jar -delta\n*.dll -delta\n*.so -delta\n",
+                FileUtils.readFileToString(new File(repo, ".git/info/attributes")));
+        git.withRepository(new RepositoryCallback<Void>() {
+            @Override
+            public Void invoke(Repository repo, VirtualChannel channel) throws IOException, InterruptedException {
+                Assert.assertEquals(1, repo.getConfig().getInt("pack", "compression", -1));
+                Assert.assertEquals(2, repo.getConfig().getInt("pack", "threads", -1));
+                // The git CLI reads the attributes
+                Assert.assertTrue(new PackConfig(repo).isDeltaCompress());
+                return null;
+            }
+        });
+
+        // JGit ignores the attributes, so it packs without delta compression at all
+        git.withRepository(configurePackCallback(options, true));
+        git.withRepository(new RepositoryCallback<Void>() {
+            @Override
+            public Void invoke(Repository repo, VirtualChannel channel) throws IOException, InterruptedException {
+                Assert.assertFalse(new PackConfig(repo).isDeltaCompress());
+                return null;
+            }
+        });
+
+        // Back to git defaults
+        git.withRepository(configurePackCallback(new GitDeployCommand.PackOptions("", 0, 0), true));
+
+        Assert.assertFalse(new File(repo, ".git/info/attributes").exists());
+        git.withRepository(new RepositoryCallback<Void>() {
+            @Override
+            public Void invoke(Repository repo, VirtualChannel channel) throws IOException, InterruptedException {
+                Assert.assertNull(repo.getConfig().getString("pack", null, "compression"));
+                Assert.assertNull(repo.getConfig().getString("pack", null, "threads"));
+                Assert.assertTrue(new PackConfig(repo).isDeltaCompress());
+                return null;
+            }
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    private static RepositoryCallback<Void> configurePackCallback(GitDeployCommand.PackOptions options,
+                                                                  boolean inProcess) throws Exception {
+        Class<?> callbackClass = Class.forName(GitDeployCommand.class.getName() + "$ConfigurePackCallback");
+        return (RepositoryCallback<Void>) Whitebox.invokeConstructor(callbackClass, options, inProcess);
+    }
+
+    @Test
+    public void updateRepository() throws Exception {
+        GitDeployCommand command = new GitDeployCommand();
+        TaskListener listener = new StreamTaskListener(System.out, Charset.defaultCharset());
+        File remote = workspace.newFolder("remote");
+        org.eclipse.jgit.api.Git.init().setBare(true).setDirectory(remote).call().close();
+        String url = "file://" + remote.getAbsolutePath();
+
+        // Previous deployment
+        File seed = workspace.newFolder("seed");
+        org.eclipse.jgit.api.Git seedGit = org.eclipse.jgit.api.Git.cloneRepository()
+                .setURI(url).setDirectory(seed).call();
+        FileUtils.write(new File(seed, "f1.txt"), "f1");
+        seedGit.add().addFilepattern("f1.txt").call();
+        seedGit.commit().setMessage("c1").call();
+        seedGit.push().call();
+
+        // Deploy repository left by that deployment, with a commit that failed to push and an untracked file
+        File repo = workspace.newFolder("repo");
+        org.eclipse.jgit.api.Git repoGit = org.eclipse.jgit.api.Git.cloneRepository()
+                .setURI(url).setDirectory(repo).call();
+        FileUtils.write(new File(repo, "stray.txt"), "stray");
+        repoGit.add().addFilepattern("stray.txt").call();
+        repoGit.commit().setMessage("not pushed").call();
+        FileUtils.write(new File(repo, "untracked.txt"), "untracked");
+        repoGit.close();
+
+        // Another deployment from somewhere else
+        FileUtils.write(new File(seed, "f2.txt"), "f2");
+        seedGit.add().addFilepattern("f2.txt").call();
+        RevCommit head = seedGit.commit().setMessage("c2").call();
+        seedGit.push().call();
+        seedGit.close();
+
+        GitClient git = Git.with(listener, null).in(repo).getClient();
+        boolean updated = Whitebox.<Boolean>invokeMethod(command, "updateRepository",
+                git, new FilePath(repo), url, true, listener);
+
+        Assert.assertTrue(updated);
+        Assert.assertEquals(head.getId(), git.revParse("HEAD"));
+        Assert.assertTrue(new File(repo, "f2.txt").exists());
+        Assert.assertFalse(new File(repo, "stray.txt").exists());
+        Assert.assertFalse(new File(repo, "untracked.txt").exists());
+
+        // Repository of another app is not reused
+        updated = Whitebox.<Boolean>invokeMethod(command, "updateRepository",
+                git, new FilePath(repo), url + "other", true, listener);
+        Assert.assertFalse(updated);
+        Assert.assertFalse(repo.exists());
+
+        // Missing repository
+        updated = Whitebox.<Boolean>invokeMethod(command, "updateRepository",
+                git, new FilePath(repo), url, true, listener);
+        Assert.assertFalse(updated);
+    }
+
+    @Test
+    public void cloneRepository() throws Exception {
+        GitDeployCommand command = new GitDeployCommand();
+        TaskListener listener = new StreamTaskListener(System.out, Charset.defaultCharset());
+        File remote = workspace.newFolder("remote");
+        org.eclipse.jgit.api.Git.init().setBare(true).setDirectory(remote).call().close();
+        String url = "file://" + remote.getAbsolutePath();
+
+        // Empty remote repository
+        File emptyRepo = workspace.newFolder("empty");
+        GitClient git = Git.with(listener, null).in(emptyRepo).getClient();
+        boolean hasDeployBranch = Whitebox.<Boolean>invokeMethod(command, "hasRemoteDeployBranch", git, url);
+        Assert.assertFalse(hasDeployBranch);
+        Whitebox.invokeMethod(command, "cloneRepository", git, url, false);
+        Assert.assertTrue(git.hasGitRepo());
+
+        // Remote repository with history
+        File seed = workspace.newFolder("seed");
+        org.eclipse.jgit.api.Git seedGit = org.eclipse.jgit.api.Git.cloneRepository()
+                .setURI(url).setDirectory(seed).call();
+        RevCommit head = null;
+        for (int i = 0; i < 5; i++) {
+            FileUtils.write(new File(seed, "f.txt"), "f" + i);
+            seedGit.add().addFilepattern("f.txt").call();
+            head = seedGit.commit().setMessage("c" + i).call();
+        }
+        seedGit.push().call();
+        seedGit.close();
+
+        File repo = workspace.newFolder("repo");
+        git = Git.with(listener, null).in(repo).getClient();
+        hasDeployBranch = Whitebox.<Boolean>invokeMethod(command, "hasRemoteDeployBranch", git, url);
+        Assert.assertTrue(hasDeployBranch);
+        Whitebox.invokeMethod(command, "cloneRepository", git, url, true);
+
+        Assert.assertEquals(head.getId(), git.revParse("HEAD"));
+        Assert.assertEquals("f4", FileUtils.readFileToString(new File(repo, "f.txt")));
+        // Only the tip is fetched
+        Assert.assertTrue(new File(repo, ".git/shallow").exists());
+    }
+
+    @Test
+    public void orphanCommit() throws Exception {
+        GitDeployCommand command = new GitDeployCommand();
+        TaskListener listener = new StreamTaskListener(System.out, Charset.defaultCharset());
+        File remote = workspace.newFolder("remote");
+        org.eclipse.jgit.api.Git.init().setBare(true).setDirectory(remote).call().close();
+        String url = "file://" + remote.getAbsolutePath();
+
+        File repo = workspace.newFolder("repo");
+        File src = workspace.newFolder("src");
+        GitClient git = Git.with(listener, null).in(repo).getClient();
+        Class<?> callbackClass = Class.forName(GitDeployCommand.class.getName() + "$OrphanCommitCallback");
+        for (int i = 0; i < 20; i++) {
+            FileUtils.write(new File(src, "f.txt"), "f" + i);
+
+            boolean hasDeployBranch = Whitebox.<Boolean>invokeMethod(command, "hasRemoteDeployBranch", git, url);
+            boolean updated = Whitebox.<Boolean>invokeMethod(command, "updateRepository",
+                    git, new FilePath(repo), url, hasDeployBranch, listener);
+            Assert.assertEquals(i > 0, updated);
+            if (!updated) {
+                Whitebox.invokeMethod(command, "cloneRepository", git, url, hasDeployBranch);
+            }
+            Whitebox.invokeMethod(command, "syncFiles", git, new FilePath(src), "", "*.txt");
+            Assert.assertTrue(Whitebox.<Boolean>invokeMethod(command, "isIndexChanged", git));
+
+            git.withRepository((RepositoryCallback<?>) Whitebox.invokeConstructor(callbackClass, "Deploy " + i));
+            git.push().to(new URIish(url)).ref("master").force().execute();
+        }
+
+        // Only the last deployment is left in the remote repository
+        try (org.eclipse.jgit.api.Git remoteGit = org.eclipse.jgit.api.Git.open(remote)) {
+            int count = 0;
+            for (RevCommit commit : remoteGit.log().call()) {
+                Assert.assertEquals(0, commit.getParentCount());
+                Assert.assertEquals("Deploy 19", commit.getFullMessage());
+                count++;
+            }
+            Assert.assertEquals(1, count);
 
+            // Once garbage collected, its size doesn't depend on the number of deployments
+            Properties stats = remoteGit.gc().setExpire(new Date()).call();
+            Assert.assertEquals("3", stats.getProperty("numberOfPackedObjects"));
+            Assert.assertEquals("0", stats.getProperty("numberOfLooseObjects"));
+        }
+    }
+
+    @Test
+    public void deployToFreshWorkspace() throws Exception {
+        File remote = workspace.newFolder("remote");
+        org.eclipse.jgit.api.Git.init().setBare(true).setDirectory(remote).call().close();
+        String url = "file://" + remote.getAbsolutePath();
+
+        // First deployment from this workspace, the deploy repository doesn't exist yet
+        File ws = workspace.newFolder("ws");
+        FileUtils.write(new File(ws, "src/f.txt"), "f");
+        Assert.assertFalse(new File(ws, ".azure-deploy").exists());
+
+        Assert.assertTrue(deployOnAgent(ws, "git", url, "Deploy 1"));
+
+        try (org.eclipse.jgit.api.Git remoteGit = org.eclipse.jgit.api.Git.open(remote)) {
+            RevCommit head = remoteGit.log().setMaxCount(1).call().iterator().next();
+            Assert.assertEquals("Deploy 1", head.getFullMessage());
+        }
+    }
+
+    @Test
+    public void deployInSingleAgentCall() throws Exception {
+        File remote = workspace.newFolder("remote");
+        org.eclipse.jgit.api.Git.init().setBare(true).setDirectory(remote).call().close();
+        String url = "file://" + remote.getAbsolutePath();
+        final File ws = workspace.newFolder("ws");
+        FileUtils.write(new File(ws, "src/f.txt"), "f");
+
+        // Stands in for the channel to the agent, where the workspace of the callable is a local path once
+        // deserialized
+        final AtomicInteger calls = new AtomicInteger();
+        VirtualChannel channel = mock(VirtualChannel.class);
+        doAnswer(new Answer<Boolean>() {
+            @Override
+            public Boolean answer(InvocationOnMock invocation) throws Throwable {
+                calls.incrementAndGet();
+                Callable<Boolean, IOException> callable = invocation.getArgument(0);
+                Whitebox.setInternalState(callable, "workspace", new FilePath(ws));
+                return callable.call();
+            }
+        }).when(channel).call(Mockito.<Callable<Boolean, IOException>>any());
+
+        FilePath agentWorkspace = new FilePath(channel, ws.getAbsolutePath());
+        boolean pushed = agentWorkspace.act(newDeployCallable(agentWorkspace, "git", url, "Deploy 1"));
+
+        // Clone, sync, commit and push all happened in that single call
+        Assert.assertTrue(pushed);
+        Assert.assertEquals(1, calls.get());
+        try (org.eclipse.jgit.api.Git remoteGit = org.eclipse.jgit.api.Git.open(remote)) {
+            RevCommit head = remoteGit.log().setMaxCount(1).call().iterator().next();
+            Assert.assertEquals("Deploy 1", head.getFullMessage());
+        }
+    }
+
+    private static boolean deployOnAgent(File ws, String gitExe, String url, String message) throws Exception {
+        FilePath workspace = new FilePath(ws);
+        return workspace.act(newDeployCallable(workspace, gitExe, url, message));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Callable<Boolean, IOException> newDeployCallable(
+            FilePath workspace, String gitExe, String url, String message) throws Exception {
+        TaskListener listener = new StreamTaskListener(System.out, Charset.defaultCharset());
+        Constructor<?> constructor = Class.forName(GitDeployCommand.class.getName() + "$GitDeployCommandOnSlave")
+                .getDeclaredConstructors()[0];
+        constructor.setAccessible(true);
+        return (Callable<Boolean, IOException>) constructor.newInstance(
+                listener, new EnvVars(), gitExe, url, mock(StandardUsernamePasswordCredentials.class), workspace,
+                "src", "", "*.txt", message, new GitDeployCommand.PackOptions("", 0, 0), false);
+    }
+
+    @Test
+    public void deployInProcess() throws Exception {
+        GitDeployCommand command = new GitDeployCommand();
+        TaskListener listener = new StreamTaskListener(System.out, Charset.defaultCharset());
+        File remote = workspace.newFolder("remote");
+        org.eclipse.jgit.api.Git.init().setBare(true).setDirectory(remote).call().close();
+        String url = "file://" + remote.getAbsolutePath();
+
+        File repo = workspace.newFolder("repo");
+        File src = workspace.newFolder("src");
+        GitClient git = Git.with(listener, null).in(repo).using(JGitTool.MAGIC_EXENAME).getClient();
+        for (int i = 0; i < 2; i++) {
+            FileUtils.write(new File(src, "f.txt"), "f" + i);
+
+            boolean hasDeployBranch = Whitebox.<Boolean>invokeMethod(command, "hasRemoteDeployBranch", git, url);
+            boolean updated = Whitebox.<Boolean>invokeMethod(command, "updateRepository",
+                    git, new FilePath(repo), url, hasDeployBranch, listener);
+            Assert.assertEquals(i > 0, updated);
+            if (!updated) {
+                Whitebox.invokeMethod(command, "cloneRepository", git, url, hasDeployBranch);
+            }
+            Whitebox.invokeMethod(command, "syncFiles", git, new FilePath(src), "", "*.txt");
+            Assert.assertTrue(Whitebox.<Boolean>invokeMethod(command, "isIndexChanged", git));
+
+            git.commit("Deploy " + i);
+            git.push().to(new URIish(url)).ref("master").execute();
+        }
+
+        try (org.eclipse.jgit.api.Git remoteGit = org.eclipse.jgit.api.Git.open(remote)) {
+            RevCommit head = remoteGit.log().setMaxCount(1).call().iterator().next();
+            Assert.assertEquals("Deploy 1", head.getFullMessage());
+            Assert.assertEquals(1, head.getParentCount());
+        }
+    }
 }
@@ -0,0 +1,68 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License. See License.txt in the project root for
+ * license information.
+ */
+package com.microsoft.jenkins.appservice.commands;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+public class ParallelFileCopierTest {
+
+    @Rule
+    public TemporaryFolder workspace = new TemporaryFolder();
+
+    @Test
+    public void copy() throws Exception {
+        File src = workspace.newFolder("src");
+        File target = workspace.newFolder("target");
+        FileUtils.write(new File(target, "f0.txt"), "old");
+
+        Map<File, File> copies = new HashMap<>();
+        for (int i = 0; i < 50; i++) {
+            File source = new File(src, "f" + i + ".txt");
+            FileUtils.write(source, "f" + i);
+            source.setLastModified(1000000000L + i * 1000L);
+            copies.put(new File(target, (i % 2 == 0 ? "" : "deep/") + "f" + i + ".txt"), source);
+        }
+
+        new ParallelFileCopier(4).copy(copies);
+
+        for (Map.Entry<File, File> copy : copies.entrySet()) {
+            Assert.assertEquals(FileUtils.readFileToString(copy.getValue()),
+                    FileUtils.readFileToString(copy.getKey()));
+            Assert.assertEquals(copy.getValue().lastModified(), copy.getKey().lastModified());
+        }
+    }
+
+    @Test
+    public void copyFailure() throws Exception {
+        File src = workspace.newFolder("src");
+        File target = workspace.newFolder("target");
+
+        Map<File, File> copies = new HashMap<>();
+        for (int i = 0; i < 10; i++) {
+            File source = new File(src, "f" + i + ".txt");
+            if (i != 5) {
+                FileUtils.write(source, "f" + i);
+            }
+            copies.put(new File(target, "f" + i + ".txt"), source);
+        }
+
+        try {
+            new ParallelFileCopier(4).copy(copies);
+            Assert.fail("Should throw exception for a missing source");
+        } catch (IOException e) {
+            // Expected
+        }
+    }
+}
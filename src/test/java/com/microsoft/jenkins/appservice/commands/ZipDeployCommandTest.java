@@ -0,0 +1,145 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License. See License.txt in the project root for
+ * license information.
+ */
+package com.microsoft.jenkins.appservice.commands;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import com.microsoft.jenkins.exceptions.AzureCloudException;
+import hudson.FilePath;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.NullOutputStream;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+public class ZipDeployCommandTest {
+
+    @Rule
+    public TemporaryFolder workspace = new TemporaryFolder();
+
+    private HttpServer server;
+    private String kuduUrl;
+    private final List<String> requests = new ArrayList<>();
+    private final Map<String, String> extracted = new ConcurrentHashMap<>();
+
+    /**
+     * A stand-in for the Kudu zip and VFS APIs that unpacks uploaded archives in memory.
+     */
+    @Before
+    public void setup() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                String path = exchange.getRequestURI().getPath();
+                requests.add(exchange.getRequestMethod() + " " + path);
+
+                if (!"Basic dXNlcjpwYXNz".equals(exchange.getRequestHeaders().getFirst("Authorization"))) {
+                    IOUtils.copy(exchange.getRequestBody(), NullOutputStream.NULL_OUTPUT_STREAM);
+                    byte[] error = "Invalid publishing credentials".getBytes("UTF-8");
+                    exchange.sendResponseHeaders(403, error.length);
+                    exchange.getResponseBody().write(error);
+                    exchange.close();
+                    return;
+                }
+
+                if (path.startsWith("/api/zip/")) {
+                    String target = path.substring("/api/zip/".length());
+                    ZipInputStream zip = new ZipInputStream(exchange.getRequestBody());
+                    ZipEntry entry = zip.getNextEntry();
+                    while (entry != null) {
+                        extracted.put(target + entry.getName(), IOUtils.toString(zip, "UTF-8"));
+                        entry = zip.getNextEntry();
+                    }
+                    exchange.sendResponseHeaders(200, -1);
+                } else {
+                    exchange.sendResponseHeaders(404, -1);
+                }
+                exchange.close();
+            }
+        });
+        server.start();
+        kuduUrl = "http://localhost:" + server.getAddress().getPort();
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    @Test
+    public void getKuduUrl() {
+        Assert.assertEquals("https://app.scm.azurewebsites.net:443",
+                ZipDeployCommand.getKuduUrl("https://app.scm.azurewebsites.net:443/app.git"));
+        Assert.assertEquals("https://app.scm.azurewebsites.net:443",
+                ZipDeployCommand.getKuduUrl("app.scm.azurewebsites.net:443/app.git"));
+    }
+
+    @Test
+    public void upload() throws Exception {
+        File src = workspace.newFolder("src");
+        FileUtils.write(new File(src, "index.html"), "index");
+        File deepDir = new File(src, "deep");
+        deepDir.mkdir();
+        FileUtils.write(new File(deepDir, "f.txt"), "f");
+
+        FilePath sourceDir = new FilePath(src);
+        new ZipDeployCommand.ZipUploader(kuduUrl, "user", "pass", System.out)
+                .upload(sourceDir, sourceDir.list("**/*"), "");
+
+        Assert.assertEquals(2, extracted.size());
+        Assert.assertEquals("index", extracted.get("site/wwwroot/index.html"));
+        Assert.assertEquals("f", extracted.get("site/wwwroot/deep/f.txt"));
+    }
+
+    @Test
+    public void uploadTomcatRoot() throws Exception {
+        File src = workspace.newFolder("src");
+        FileUtils.write(new File(src, "ROOT.war"), "war");
+
+        FilePath sourceDir = new FilePath(src);
+        new ZipDeployCommand.ZipUploader(kuduUrl, "user", "pass", System.out)
+                .upload(sourceDir, sourceDir.list("*.war"), "webapps");
+
+        // ROOT directory is removed before the upload
+        Assert.assertEquals(2, requests.size());
+        Assert.assertEquals("DELETE /api/vfs/site/wwwroot/webapps/ROOT/", requests.get(0));
+        Assert.assertEquals("PUT /api/zip/site/wwwroot/webapps/", requests.get(1));
+        Assert.assertEquals("war", extracted.get("site/wwwroot/webapps/ROOT.war"));
+    }
+
+    @Test
+    public void uploadUnauthorized() throws Exception {
+        File src = workspace.newFolder("src");
+        FileUtils.write(new File(src, "index.html"), "index");
+
+        FilePath sourceDir = new FilePath(src);
+        try {
+            new ZipDeployCommand.ZipUploader(kuduUrl, "user", "wrong", System.out)
+                    .upload(sourceDir, sourceDir.list("**/*"), "");
+            Assert.fail("Should fail when the upload is rejected");
+        } catch (AzureCloudException e) {
+            Assert.assertTrue(e.getMessage().contains("403"));
+            // The error body tells why
+            Assert.assertTrue(e.getMessage().contains("Invalid publishing credentials"));
+        }
+    }
+}